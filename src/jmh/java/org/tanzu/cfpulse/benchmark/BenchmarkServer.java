@@ -0,0 +1,151 @@
+package org.tanzu.cfpulse.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.tanzu.cfpulse.CfPulseMcpApplication;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/*
+    The MCP server as the benchmarks run it: started in this JVM against a stub foundation forked into
+    another, with the space index off so that every read reaches the stub unless the cache answers it.
+    Further properties override the defaults, e.g. cf.cache.enabled=false.
+ */
+final class BenchmarkServer implements AutoCloseable {
+
+    // Sixty-four entries of 4 KB with distinct contents, so each one is fingerprinted and uploaded
+    private static final int JAR_ENTRIES = 64;
+    private static final int JAR_ENTRY_SIZE = 4096;
+    // The large application is made of 64 KB entries, stored rather than deflated so that writing it stays cheap
+    private static final int LARGE_JAR_ENTRY_SIZE = 64 * 1024;
+
+    private final StubFoundation.Forked stub;
+    private final ConfigurableApplicationContext context;
+    private final Path applicationJar;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Path largeApplicationJar;
+
+    private BenchmarkServer(StubFoundation.Forked stub, ConfigurableApplicationContext context, Path applicationJar) {
+        this.stub = stub;
+        this.context = context;
+        this.applicationJar = applicationJar;
+    }
+
+    static BenchmarkServer start(StubFoundation.Settings settings, Map<String, Object> properties) throws IOException, InterruptedException {
+        StubFoundation.Forked stub = StubFoundation.fork(settings);
+        Map<String, Object> applicationProperties = new LinkedHashMap<>(stub.applicationProperties());
+        applicationProperties.put("server.port", "0");
+        applicationProperties.put("spring.main.banner-mode", "off");
+        applicationProperties.put("logging.level.root", "WARN");
+        applicationProperties.put("logging.level.io.modelcontextprotocol", "WARN");
+        applicationProperties.put("cf.index.enabled", "false");
+        applicationProperties.putAll(properties);
+        try {
+            // As arguments, to take precedence over the CF_* placeholders of application.yaml
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(CfPulseMcpApplication.class)
+                    .run(applicationProperties.entrySet().stream()
+                            .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                            .toArray(String[]::new));
+            return new BenchmarkServer(stub, context, writeApplicationJar());
+        } catch (RuntimeException e) {
+            stub.close();
+            throw e;
+        }
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    Path applicationJar() {
+        return applicationJar;
+    }
+
+    /*
+        Writes an application of about the given size whose entries are the same every time except the
+        first, which holds the version. Pushing each version in turn changes a single class per push.
+     */
+    synchronized Path largeApplicationJar(int megabytes, int version) throws IOException {
+        if (largeApplicationJar == null) {
+            largeApplicationJar = Files.createTempFile("benchmark-large-application", ".jar");
+        }
+        byte[] content = new byte[LARGE_JAR_ENTRY_SIZE];
+        CRC32 crc = new CRC32();
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(largeApplicationJar), LARGE_JAR_ENTRY_SIZE);
+             JarOutputStream out = new JarOutputStream(file)) {
+            for (int i = 0; i < megabytes * 1024 * 1024 / LARGE_JAR_ENTRY_SIZE; i++) {
+                new SplittableRandom(i == 0 ? -1 - version : i).nextBytes(content);
+                crc.reset();
+                crc.update(content);
+                JarEntry entry = new JarEntry("BOOT-INF/classes/Class%05d.class".formatted(i));
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCompressedSize(content.length);
+                entry.setCrc(crc.getValue());
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+        return largeApplicationJar;
+    }
+
+    /*
+        The bytes of application bits the stub has received so far
+     */
+    long uploadedBytes() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(HttpRequest.newBuilder(URI.create("http://" + stub.apiHost() + "/stub/uploads")).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        return objectMapper.readTree(response.body()).path("bytes").asLong();
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        try {
+            context.close();
+        } finally {
+            stub.close();
+            Files.deleteIfExists(applicationJar);
+            if (largeApplicationJar != null) {
+                Files.deleteIfExists(largeApplicationJar);
+            }
+        }
+    }
+
+    private static Path writeApplicationJar() throws IOException {
+        Path jar = Files.createTempFile("benchmark-application", ".jar");
+        SplittableRandom random = new SplittableRandom(42);
+        byte[] content = new byte[JAR_ENTRY_SIZE];
+        try (OutputStream file = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(file)) {
+            for (int i = 0; i < JAR_ENTRIES; i++) {
+                random.nextBytes(content);
+                out.putNextEntry(new JarEntry("BOOT-INF/classes/entry-%02d.bin".formatted(i)));
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
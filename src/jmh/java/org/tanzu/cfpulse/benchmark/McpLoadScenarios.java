@@ -0,0 +1,407 @@
+package org.tanzu.cfpulse.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.client.McpAsyncClient;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
+import io.modelcontextprotocol.spec.McpSchema;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    End-to-end load on the MCP server: clients connected over SSE keep a fixed number of calls to one tool
+    in flight for a fixed time, against a stub foundation forked into a JVM of its own. For each scenario
+    it reports the throughput, the p50, p99 and maximum latency, the failed calls, the size of the results
+    and of the application bits uploaded, and for this JVM, which runs both the server and the clients,
+    the peak thread count, the peak heap and resident memory, and the allocation rate. They are written as
+    JSON to the file named by the first argument.
+
+    The remaining arguments are key=value settings: load.clients (default 8), the calls in flight for the
+    scenarios that do not set their own; load.connections (50), the most SSE sessions the calls are spread
+    over; load.warm-up (PT5S); load.duration (PT20S); load.request-timeout (PT1M), after which a call
+    counts as failed; load.push-clients (four times the shared bounded elastic scheduler's thread cap) for
+    push-concurrent; load.large-jar-megabytes (100) for push-large; load.execution-in-flight (500) for the
+    execution scenarios; load.connections-in-flight (64) for the connections scenarios; load.in-flight
+    (50,500,5000), the levels of the threads scenarios; and load.scenarios (list,details,push,
+    push-concurrent,push-large,bind,payload,execution,connections,threads). Then the stub.* settings of
+    StubFoundation, and any server property, e.g. cf.cache.enabled=false. Scenarios that compare server settings run on a server started with them.
+ */
+public final class McpLoadScenarios {
+
+    /*
+        group: the name load.scenarios selects it by; inFlight: calls kept in flight, or 0 for load.clients;
+        serverProperties: set on top of the shared ones, for scenarios that compare server settings
+     */
+    private record Scenario(String group, String name, String tool, int inFlight, Arguments arguments,
+                            Map<String, Object> serverProperties) {
+
+        Scenario(String group, String name, String tool, int inFlight, Arguments arguments) {
+            this(group, name, tool, inFlight, arguments, Map.of());
+        }
+    }
+
+    /*
+        The arguments of a scenario's call with the given sequence number
+     */
+    private interface Arguments {
+        Map<String, Object> of(BenchmarkServer server, int call);
+    }
+
+    record Result(String scenario, String tool, int inFlight, long calls, long errors, double callsPerSecond,
+                  double p50Millis, double p99Millis, double maxMillis,
+                  double resultBytesPerCall, double uploadedKilobytesPerCall,
+                  int peakThreads, double peakHeapMegabytes, double peakResidentMegabytes,
+                  double allocatedMegabytesPerSecond, double allocatedKilobytesPerCall) {
+    }
+
+    /*
+        The latencies of a scenario's calls, in nanoseconds, and the size of their results
+     */
+    private static final class Recording {
+        private long[] latencies = new long[1024];
+        private int calls;
+        private long errors;
+        private long resultBytes;
+
+        synchronized void record(long nanos, boolean error, long bytes) {
+            if (calls == latencies.length) {
+                latencies = Arrays.copyOf(latencies, calls * 2);
+            }
+            latencies[calls++] = nanos;
+            resultBytes += bytes;
+            if (error) {
+                errors++;
+            }
+        }
+    }
+
+    /*
+        Samples the heap in use and the resident set size of this JVM while a scenario runs, keeping the peaks
+     */
+    private static final class MemorySampler implements AutoCloseable {
+        private static final Path STATUS = Path.of("/proc/self/status");
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        private final AtomicLong peakHeap = new AtomicLong();
+        private final AtomicLong peakResident = new AtomicLong();
+
+        MemorySampler() {
+            executor.scheduleAtFixedRate(this::sample, 0, 100, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            peakResident.accumulateAndGet(residentBytes(), Math::max);
+        }
+
+        // From /proc, so 0 on systems other than Linux
+        private static long residentBytes() {
+            try {
+                for (String line : Files.readAllLines(STATUS)) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Not available here
+            }
+            return 0;
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+        SSE sessions shared by the scenarios and opened as they are first needed. The JDK HTTP client behind
+        each one keeps its threads after the session closes, so opening fresh sessions for every scenario
+        would pile them onto the next scenario's thread count. The clients share a few threads of their own,
+        so that the thread count follows the server rather than the number of calls in flight.
+     */
+    private static final class Sessions implements AutoCloseable {
+        private static final int CLIENT_THREADS = 4;
+
+        private final String baseUrl;
+        private final Duration requestTimeout;
+        private final List<McpAsyncClient> clients = new ArrayList<>();
+        private final ExecutorService executor = Executors.newFixedThreadPool(CLIENT_THREADS,
+                Thread.ofPlatform().name("mcp-load-client-", 0).daemon().factory());
+
+        Sessions(String baseUrl, Duration requestTimeout) {
+            this.baseUrl = baseUrl;
+            this.requestTimeout = requestTimeout;
+        }
+
+        List<McpAsyncClient> first(int count) {
+            while (clients.size() < count) {
+                McpAsyncClient client = McpClient.async(HttpClientSseClientTransport.builder(baseUrl)
+                                .customizeClient(builder -> builder.executor(executor))
+                                .build())
+                        .requestTimeout(requestTimeout)
+                        .build();
+                client.initialize().block();
+                clients.add(client);
+            }
+            return clients.subList(0, count);
+        }
+
+        @Override
+        public void close() {
+            Flux.fromIterable(clients).flatMap(McpAsyncClient::closeGracefully).blockLast(Duration.ofSeconds(30));
+            executor.shutdownNow();
+        }
+    }
+
+    private McpLoadScenarios() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = Path.of(args.length > 0 ? args[0] : "target/mcp-load-result.json");
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String arg : Arrays.asList(args).subList(Math.min(1, args.length), args.length)) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        Map<String, Object> serverProperties = new LinkedHashMap<>();
+        settings.forEach((key, value) -> {
+            if (key.startsWith("stub.")) {
+                System.setProperty(key, value);
+            } else if (!key.startsWith("load.")) {
+                serverProperties.put(key, value);
+            }
+        });
+        int clients = Integer.parseInt(settings.getOrDefault("load.clients", "8"));
+        int connections = Integer.parseInt(settings.getOrDefault("load.connections", "50"));
+        Duration warmUp = Duration.parse(settings.getOrDefault("load.warm-up", "PT5S"));
+        Duration duration = Duration.parse(settings.getOrDefault("load.duration", "PT20S"));
+        Duration requestTimeout = Duration.parse(settings.getOrDefault("load.request-timeout", "PT1M"));
+        List<String> selected = List.of(settings.getOrDefault("load.scenarios",
+                "list,details,push,push-concurrent,push-large,bind,payload,execution,connections,threads").split(","));
+        StubFoundation.Settings stubSettings = StubFoundation.Settings.fromSystemProperties();
+
+        List<Result> results = new ArrayList<>();
+        // One server at a time, started again whenever a scenario asks for different properties than the last
+        BenchmarkServer server = null;
+        Sessions sessions = null;
+        Map<String, Object> running = null;
+        try {
+            for (Scenario scenario : scenarios(stubSettings, settings)) {
+                if (!selected.contains(scenario.group())) {
+                    continue;
+                }
+                Map<String, Object> properties = new LinkedHashMap<>(serverProperties);
+                properties.putAll(scenario.serverProperties());
+                if (!properties.equals(running)) {
+                    close(sessions, server);
+                    server = BenchmarkServer.start(stubSettings, properties);
+                    sessions = new Sessions(server.baseUrl(), requestTimeout);
+                    running = properties;
+                }
+                int inFlight = scenario.inFlight() > 0 ? scenario.inFlight() : clients;
+                Result result = run(server, sessions.first(Math.min(inFlight, connections)), scenario, inFlight, warmUp, duration);
+                System.out.printf("%-18s %-20s %5d in flight %8.1f calls/s  p50 %9.2f ms  p99 %9.2f ms  max %9.2f ms  %6d errors  "
+                                + "%9.0f B/result  %9.1f KB uploaded/call  %5d threads  %7.1f MB heap  %7.1f MB resident  %8.1f MB/s  %8.1f KB/call%n",
+                        result.scenario(), result.tool(), result.inFlight(), result.callsPerSecond(), result.p50Millis(),
+                        result.p99Millis(), result.maxMillis(), result.errors(), result.resultBytesPerCall(),
+                        result.uploadedKilobytesPerCall(), result.peakThreads(), result.peakHeapMegabytes(),
+                        result.peakResidentMegabytes(), result.allocatedMegabytesPerSecond(), result.allocatedKilobytesPerCall());
+                results.add(result);
+            }
+        } finally {
+            close(sessions, server);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("stub", stubSettings);
+        report.put("settings", settings);
+        report.put("results", results);
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        new ObjectMapper().findAndRegisterModules().writerWithDefaultPrettyPrinter().writeValue(output.toFile(), report);
+        System.out.println("Results written to " + output);
+        System.exit(0);
+    }
+
+    private static void close(Sessions sessions, BenchmarkServer server) throws IOException, InterruptedException {
+        if (sessions != null) {
+            sessions.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+        // The JDK HTTP clients of closed sessions only stop their threads once collected, and would otherwise
+        // count towards the next server's threads
+        System.gc();
+        Thread.sleep(1_000);
+    }
+
+    private static List<Scenario> scenarios(StubFoundation.Settings settings, Map<String, String> loadSettings) {
+        Arguments list = (server, call) -> Map.of();
+        Arguments details = (server, call) -> Map.of(
+                "applicationName", StubFoundation.applicationName(call % settings.applications()));
+        Arguments push = (server, call) -> Map.of(
+                "applicationName", StubFoundation.applicationName(call % settings.applications()),
+                "path", server.applicationJar().toString());
+        // Enough concurrent pushes to take every thread of Reactor's shared bounded elastic scheduler several times over
+        int pushClients = Integer.parseInt(loadSettings.getOrDefault("load.push-clients",
+                String.valueOf(4 * Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE)));
+        int largeJarMegabytes = Integer.parseInt(loadSettings.getOrDefault("load.large-jar-megabytes", "100"));
+        List<String> fields = List.of("name", "requestedState", "runningInstances");
+
+        List<Scenario> scenarios = new ArrayList<>(List.of(
+                new Scenario("list", "list", "applicationsList", 0, list),
+                new Scenario("details", "details", "applicationDetails", 0, details),
+                new Scenario("push", "push", "pushApplication", 0, push),
+                new Scenario("push-concurrent", "push-concurrent", "pushApplication", pushClients, push),
+                // One push after another of the same large application, each with a single class changed
+                new Scenario("push-large", "push-large", "pushApplication", 1, (server, call) -> {
+                    try {
+                        return Map.of("applicationName", StubFoundation.applicationName(0),
+                                "path", server.largeApplicationJar(largeJarMegabytes, call).toString());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }),
+                new Scenario("bind", "bind", "bindServiceInstance", 0, (server, call) -> Map.of(
+                        "serviceInstanceName", StubFoundation.serviceInstanceName(call % settings.serviceInstances()),
+                        "applicationName", StubFoundation.applicationName(call % settings.applications()))),
+                new Scenario("payload", "list-full", "applicationsList", 0, list),
+                new Scenario("payload", "list-fields", "applicationsList", 0, (server, call) -> Map.of("fields", fields)),
+                new Scenario("payload", "list-table", "applicationsList", 0, (server, call) -> Map.of("format", "table")),
+                new Scenario("payload", "list-fields-table", "applicationsList", 0, (server, call) -> Map.of("fields", fields, "format", "table"))));
+        // The same calls with tool calls that hold a thread each and with ones that hold none; uncached, so each waits on the stub
+        int executionInFlight = Integer.parseInt(loadSettings.getOrDefault("load.execution-in-flight", "500"));
+        for (boolean blocking : List.of(true, false)) {
+            scenarios.add(new Scenario("execution", (blocking ? "blocking-" : "non-blocking-") + executionInFlight, "applicationDetails",
+                    executionInFlight, details, Map.of("cf.tools.blocking", String.valueOf(blocking), "cf.cache.enabled", "false")));
+        }
+        // The cf-java-client connection defaults against a larger, warmed-up pool asking for compressed responses
+        int connectionsInFlight = Integer.parseInt(loadSettings.getOrDefault("load.connections-in-flight", "64"));
+        scenarios.add(new Scenario("connections", "connections-default", "applicationDetails", connectionsInFlight, details,
+                Map.of("cf.connection.compress", "false", "cf.cache.enabled", "false")));
+        scenarios.add(new Scenario("connections", "connections-tuned", "applicationDetails", connectionsInFlight, details,
+                Map.of("cf.connection.pool-size", "200", "cf.connection.warm-up-connections", "32",
+                        "cf.connection.compress", "true", "cf.cache.enabled", "false")));
+        // Blocking calls on platform and on virtual threads; without the bulkhead, which would hold all but 16 calls before they need a thread
+        for (boolean virtual : List.of(false, true)) {
+            for (String inFlight : loadSettings.getOrDefault("load.in-flight", "50,500,5000").split(",")) {
+                scenarios.add(new Scenario("threads", (virtual ? "virtual-" : "platform-") + inFlight, "applicationDetails",
+                        Integer.parseInt(inFlight), details, Map.of("spring.threads.virtual.enabled", String.valueOf(virtual),
+                        "cf.cache.enabled", "false", "cf.resilience.enabled", "false")));
+            }
+        }
+        return scenarios;
+    }
+
+    private static Result run(BenchmarkServer server, List<McpAsyncClient> clients, Scenario scenario, int inFlight,
+                              Duration warmUp, Duration duration) throws IOException, InterruptedException {
+        // Warm-up and measured calls count on from one another, so that no measured call repeats a warm-up one
+        AtomicInteger sequence = new AtomicInteger();
+        drive(server, clients, scenario, inFlight, sequence, warmUp);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long uploadedBefore = server.uploadedBytes();
+        long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+        long started = System.nanoTime();
+        Recording recording;
+        long peakHeap;
+        long peakResident;
+        try (MemorySampler memory = new MemorySampler()) {
+            recording = drive(server, clients, scenario, inFlight, sequence, duration);
+            peakHeap = memory.peakHeap.get();
+            peakResident = memory.peakResident.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long allocated = threads.getTotalThreadAllocatedBytes() - allocatedBefore;
+        long uploaded = server.uploadedBytes() - uploadedBefore;
+
+        long[] latencies = Arrays.copyOf(recording.latencies, recording.calls);
+        Arrays.sort(latencies);
+        int calls = latencies.length;
+        return new Result(scenario.name(), scenario.tool(), inFlight, calls, recording.errors,
+                round(calls / seconds),
+                millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)),
+                millis(calls == 0 ? 0 : latencies[calls - 1]),
+                calls == 0 ? 0 : round((double) recording.resultBytes / calls),
+                calls == 0 ? 0 : round(uploaded / 1024.0 / calls),
+                threads.getPeakThreadCount(), round(peakHeap / (1024.0 * 1024)), round(peakResident / (1024.0 * 1024)),
+                round(allocated / seconds / (1024 * 1024)),
+                calls == 0 ? 0 : round(allocated / 1024.0 / calls));
+    }
+
+    /*
+        Keeps inFlight calls to the scenario's tool going, spread over the clients, until the time is up
+     */
+    private static Recording drive(BenchmarkServer server, List<McpAsyncClient> clients, Scenario scenario, int inFlight,
+                                   AtomicInteger sequence, Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        Recording recording = new Recording();
+        Flux.<Integer>generate(sink -> sink.next(sequence.getAndIncrement()))
+                .takeWhile(call -> System.nanoTime() < deadline)
+                .flatMap(call -> {
+                    McpSchema.CallToolRequest request = new McpSchema.CallToolRequest(scenario.tool(), scenario.arguments().of(server, call));
+                    long start = System.nanoTime();
+                    return clients.get(call % clients.size()).callTool(request)
+                            .doOnNext(result -> recording.record(System.nanoTime() - start,
+                                    Boolean.TRUE.equals(result.isError()), resultBytes(result)))
+                            .then()
+                            .onErrorResume(e -> {
+                                recording.record(System.nanoTime() - start, true, 0);
+                                return Mono.empty();
+                            });
+                }, inFlight)
+                .blockLast();
+        return recording;
+    }
+
+    private static long resultBytes(McpSchema.CallToolResult result) {
+        return result.content().stream()
+                .filter(McpSchema.TextContent.class::isInstance)
+                .mapToLong(content -> ((McpSchema.TextContent) content).text().getBytes(StandardCharsets.UTF_8).length)
+                .sum();
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.max(0, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
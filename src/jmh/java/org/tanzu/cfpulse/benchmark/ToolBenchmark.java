@@ -0,0 +1,111 @@
+package org.tanzu.cfpulse.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tanzu.cfpulse.cf.CfService;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The listing, detail, push and bind tools called on CfService, against a stub foundation answering
+    after latency in pages of pageSize. The cache is off by default so that every call pays its Cloud
+    Controller round trips; pass -p cache=true to measure the cached path. Run with -t to call from
+    several threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ToolBenchmark {
+
+    @Param({"PT0.01S"})
+    public String latency;
+
+    @Param({"50"})
+    public int pageSize;
+
+    @Param({"false"})
+    public boolean cache;
+
+    private StubFoundation.Settings settings;
+    private BenchmarkServer server;
+    private CfService cfService;
+    private String applicationJar;
+
+    /*
+        Each thread works through the applications and service instances in turn
+     */
+    @State(Scope.Thread)
+    public static class Names {
+        private StubFoundation.Settings settings;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ToolBenchmark benchmark) {
+            settings = benchmark.settings;
+            next = (int) Thread.currentThread().threadId();
+        }
+
+        String application() {
+            return StubFoundation.applicationName(next++ % settings.applications());
+        }
+
+        String serviceInstance() {
+            return StubFoundation.serviceInstanceName(next % settings.serviceInstances());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        StubFoundation.Settings defaults = StubFoundation.Settings.fromSystemProperties();
+        settings = defaults.withLatency(Duration.parse(latency), pageSize);
+        server = BenchmarkServer.start(settings, Map.of("cf.cache.enabled", String.valueOf(cache)));
+        cfService = server.bean(CfService.class);
+        applicationJar = server.applicationJar().toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Benchmark
+    public Object applicationsList() {
+        return cfService.applicationsList(null, null, null, null, null).block();
+    }
+
+    @Benchmark
+    public Object organizationsList() {
+        return cfService.organizationsList(null, null, null, null, null).block();
+    }
+
+    @Benchmark
+    public Object applicationDetails(Names names) {
+        return cfService.applicationDetails(names.application(), null, null).block();
+    }
+
+    @Benchmark
+    public void pushApplication(Names names) {
+        cfService.pushApplication(names.application(), applicationJar, null, null, null, null, null, null).block();
+    }
+
+    @Benchmark
+    public void bindServiceInstance(Names names) {
+        cfService.bindServiceInstance(names.serviceInstance(), names.application(), null, null).block();
+    }
+}
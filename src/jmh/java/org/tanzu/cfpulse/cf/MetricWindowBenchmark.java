@@ -0,0 +1,102 @@
+package org.tanzu.cfpulse.cf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    What a tracked application costs per envelope. recordRequest runs for every HttpStartStop envelope
+    Doppler delivers, so its throughput bounds the request rate a server can follow; the shared variant
+    records from four threads into one window, as streams delivered on several event loops do. The clock
+    moves a millisecond every thousand requests, so slots are reused as they would be in a live window.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricWindowBenchmark {
+
+    private static final Duration WINDOW = Duration.ofMinutes(5);
+    private static final Duration RESOLUTION = Duration.ofSeconds(10);
+
+    @State(Scope.Thread)
+    public static class Stream {
+        // Log-uniform latencies from 100 µs to about 2 s, one request in fifty failing
+        final long[] latencies = new long[4096];
+        final int[] statuses = new int[4096];
+        final long start = System.currentTimeMillis();
+        MetricWindow window;
+        long sequence;
+
+        @Setup
+        public void setUp() {
+            SplittableRandom random = new SplittableRandom(42);
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = (long) (100 * Math.pow(2, random.nextDouble() * 14.3));
+                statuses[i] = random.nextInt(50) == 0 ? 503 : 200;
+            }
+            window = new MetricWindow(WINDOW, RESOLUTION);
+        }
+
+        long timestamp() {
+            return start + sequence / 1000;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedWindow {
+        final MetricWindow window = new MetricWindow(WINDOW, RESOLUTION);
+    }
+
+    @State(Scope.Benchmark)
+    public static class FullWindow {
+        MetricWindow window;
+        long now;
+
+        @Setup
+        public void setUp() {
+            window = new MetricWindow(WINDOW, RESOLUTION);
+            SplittableRandom random = new SplittableRandom(42);
+            long start = System.currentTimeMillis() - WINDOW.toMillis();
+            // A thousand requests a second and a container sample every ten seconds, for the whole window
+            for (long offset = 0; offset < WINDOW.toMillis(); offset++) {
+                window.recordRequest(start + offset, (long) (100 * Math.pow(2, random.nextDouble() * 14.3)), random.nextInt(50) == 0 ? 503 : 200);
+                if (offset % 10_000 == 0) {
+                    window.recordContainer(start + offset, random.nextDouble() * 100, 512L << 20, 256L << 20);
+                }
+            }
+            now = start + WINDOW.toMillis();
+        }
+    }
+
+    @Benchmark
+    public void recordRequest(Stream stream) {
+        int i = (int) (stream.sequence++ & 4095);
+        stream.window.recordRequest(stream.timestamp(), stream.latencies[i], stream.statuses[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordRequestShared(Stream stream, SharedWindow shared) {
+        int i = (int) (stream.sequence++ & 4095);
+        shared.window.recordRequest(stream.timestamp(), stream.latencies[i], stream.statuses[i]);
+    }
+
+    @Benchmark
+    public ApplicationMetrics snapshot(FullWindow full) {
+        return full.window.snapshot("app", full.now - WINDOW.toMillis(), full.now, WINDOW);
+    }
+}
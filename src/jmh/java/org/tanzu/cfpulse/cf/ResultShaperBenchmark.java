@@ -0,0 +1,81 @@
+package org.tanzu.cfpulse.cf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cloudfoundry.operations.applications.ApplicationSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/*
+    Shaping and serializing a list of applications as the list tools do: in full, projected to two
+    fields, paged, and as a table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultShaperBenchmark {
+
+    private static final List<String> FIELDS = List.of("name", "requestedState");
+
+    @Param({"500"})
+    public int applications;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResultShaper resultShaper = new ResultShaper(objectMapper);
+    private List<ApplicationSummary> summaries;
+
+    @Setup
+    public void setUp() {
+        summaries = IntStream.range(0, applications)
+                .mapToObj(i -> ApplicationSummary.builder()
+                        .id("%08d-0000-0000-0000-000000000000".formatted(i))
+                        .name("app-%04d".formatted(i))
+                        .requestedState("STARTED")
+                        .instances(2)
+                        .runningInstances(2)
+                        .memoryLimit(1024)
+                        .diskQuota(1024)
+                        .urls("app-%04d.apps.example.com".formatted(i))
+                        .build())
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] full() throws Exception {
+        return serialize(resultShaper.shapeList(summaries, null, null, null, null));
+    }
+
+    @Benchmark
+    public byte[] projected() throws Exception {
+        return serialize(resultShaper.shapeList(summaries, FIELDS, null, null, null));
+    }
+
+    @Benchmark
+    public byte[] firstPage() throws Exception {
+        return serialize(resultShaper.shapeList(summaries, null, 0, 50, null));
+    }
+
+    @Benchmark
+    public byte[] table() throws Exception {
+        return serialize(resultShaper.shapeList(summaries, FIELDS, null, null, "table"));
+    }
+
+    private byte[] serialize(Object result) throws Exception {
+        return objectMapper.writeValueAsBytes(result);
+    }
+}
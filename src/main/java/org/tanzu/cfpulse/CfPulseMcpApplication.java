@@ -2,8 +2,10 @@ package org.tanzu.cfpulse;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class CfPulseMcpApplication {
 
 	public static void main(String[] args) {
@@ -1,22 +1,69 @@
 package org.tanzu.cfpulse;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.server.McpServerFeatures.AsyncToolSpecification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.support.ToolCallbacks;
-import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.tanzu.cfpulse.cf.CfBulkService;
+import org.tanzu.cfpulse.cf.CfHealthService;
+import org.tanzu.cfpulse.cf.CfLogService;
+import org.tanzu.cfpulse.cf.CfMetricsService;
 import org.tanzu.cfpulse.cf.CfService;
+import org.tanzu.cfpulse.cf.JobService;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
+import java.util.concurrent.Executors;
 
+/*
+    The MCP server itself always runs ASYNC. With cf.tools.blocking (the default) each tool call holds a
+    thread of the tool scheduler until the Cloud Foundry API responds: one virtual thread per call when
+    virtual threads are enabled, otherwise a pool of up to cf.tools.max-threads platform threads. The MCP
+    SDK would run SYNC tools on Reactor's shared bounded elastic scheduler, where cf-java-client also reads
+    application files during a push, so enough concurrent pushes would hold every thread while the reads
+    they wait for sat in its queue. With cf.tools.blocking=false the tool calls hold no thread at all.
+ */
 @Configuration
 public class McpServerConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(McpServerConfig.class);
 
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(prefix = "cf.tools", name = "blocking", havingValue = "true", matchIfMissing = true)
+    public Scheduler toolScheduler(Environment environment, @Value("${cf.tools.max-threads:200}") int maxThreads) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            logger.info("Running blocking Cloud Foundry tools on virtual threads");
+            return Schedulers.fromExecutorService(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mcp-tool-", 0).factory()), "mcp-tools");
+        }
+        logger.info("Running blocking Cloud Foundry tools on up to {} platform threads", maxThreads);
+        return Schedulers.newBoundedElastic(maxThreads, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "mcp-tool");
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "cf.tools", name = "blocking", havingValue = "true", matchIfMissing = true)
+    public List<AsyncToolSpecification> registerTools(Scheduler toolScheduler, ToolMetrics toolMetrics, ToolDeadlines toolDeadlines,
+                                                      ObjectMapper objectMapper, CfService cfService, CfBulkService cfBulkService,
+                                                      CfHealthService cfHealthService, CfMetricsService cfMetricsService,
+                                                      CfLogService cfLogService, JobService jobService) {
+        return ReactiveTools.blockingSpecifications(toolScheduler, toolMetrics, toolDeadlines, objectMapper,
+                cfService, cfBulkService, cfHealthService, cfMetricsService, cfLogService, jobService);
+    }
+
     @Bean
-    public List<ToolCallback> registerTools(CfService cfService) {
-        return List.of(ToolCallbacks.from(cfService));
+    @ConditionalOnProperty(prefix = "cf.tools", name = "blocking", havingValue = "false")
+    public List<AsyncToolSpecification> registerAsyncTools(ToolMetrics toolMetrics, ToolDeadlines toolDeadlines, ObjectMapper objectMapper,
+                                                           CfService cfService, CfBulkService cfBulkService, CfHealthService cfHealthService,
+                                                           CfMetricsService cfMetricsService, CfLogService cfLogService, JobService jobService) {
+        logger.info("Registering non-blocking Cloud Foundry tools");
+        return ReactiveTools.asyncSpecifications(toolMetrics, toolDeadlines, objectMapper,
+                cfService, cfBulkService, cfHealthService, cfMetricsService, cfLogService, jobService);
     }
 }
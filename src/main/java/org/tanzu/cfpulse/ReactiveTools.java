@@ -0,0 +1,102 @@
+package org.tanzu.cfpulse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.server.McpAsyncServerExchange;
+import io.modelcontextprotocol.server.McpServerFeatures.AsyncToolSpecification;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.support.ToolDefinitions;
+import org.springframework.ai.util.json.JsonParser;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ReflectionUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+    Turns the @Tool methods of a bean returning Mono into MCP tools. Blocking tools wait for the Mono on
+    a thread of the given scheduler; non-blocking tools hand the Mono to the MCP transport as is, so no
+    thread is held while the Cloud Controller call is in flight. Either way the Mono is bounded by
+    the tool's deadline and timed by ToolMetrics before it is subscribed to. Results are written with
+    the application's ObjectMapper, so the spring.jackson settings (nulls left out, for one) shape every
+    tool response.
+ */
+final class ReactiveTools {
+
+    private static final String DONE = JsonParser.toJson("Done");
+
+    private ReactiveTools() {
+    }
+
+    static List<AsyncToolSpecification> blockingSpecifications(Scheduler scheduler, ToolMetrics toolMetrics, ToolDeadlines toolDeadlines,
+                                                               ObjectMapper objectMapper, Object... toolObjects) {
+        return specifications(call -> Mono.fromCallable(call::block).subscribeOn(scheduler),
+                toolMetrics, toolDeadlines, objectMapper, toolObjects);
+    }
+
+    static List<AsyncToolSpecification> asyncSpecifications(ToolMetrics toolMetrics, ToolDeadlines toolDeadlines, ObjectMapper objectMapper,
+                                                            Object... toolObjects) {
+        return specifications(Function.identity(), toolMetrics, toolDeadlines, objectMapper, toolObjects);
+    }
+
+    private static List<AsyncToolSpecification> specifications(Function<Mono<?>, Mono<?>> execution, ToolMetrics toolMetrics,
+                                                                ToolDeadlines toolDeadlines, ObjectMapper objectMapper, Object... toolObjects) {
+        return Arrays.stream(toolObjects).flatMap(toolObject -> toolMethods(toolObject).stream()
+                        .map(method -> specification(execution, toolMetrics, toolDeadlines, objectMapper, toolObject, method)))
+                .toList();
+    }
+
+    private static String toJson(ObjectMapper objectMapper, Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize tool result: " + e.getMessage(), e);
+        }
+    }
+
+    private static AsyncToolSpecification specification(Function<Mono<?>, Mono<?>> execution, ToolMetrics toolMetrics,
+                                                        ToolDeadlines toolDeadlines, ObjectMapper objectMapper, Object toolObject, Method method) {
+        ToolDefinition definition = ToolDefinitions.from(method);
+        McpSchema.Tool tool = new McpSchema.Tool(definition.name(), definition.description(), definition.inputSchema());
+
+        return new AsyncToolSpecification(tool, (exchange, arguments) ->
+                execution.apply(toolMetrics.instrument(definition.name(), toolDeadlines.apply(definition.name(), Mono.defer(() ->
+                                (Mono<?>) ReflectionUtils.invokeMethod(method, toolObject, toMethodArguments(method, exchange, arguments))))))
+                        .map(value -> toJson(objectMapper, value))
+                        .defaultIfEmpty(DONE)
+                        .map(text -> new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(text)), false))
+                        .onErrorResume(e -> Mono.just(new McpSchema.CallToolResult(
+                                List.of(new McpSchema.TextContent(String.valueOf(e.getMessage()))), true))));
+    }
+
+    private static Object[] toMethodArguments(Method method, McpAsyncServerExchange exchange, Map<String, Object> arguments) {
+        return Arrays.stream(method.getParameters())
+                .map(parameter -> toMethodArgument(parameter, exchange, arguments.get(parameter.getName())))
+                .toArray();
+    }
+
+    private static Object toMethodArgument(Parameter parameter, McpAsyncServerExchange exchange, Object value) {
+        if (ToolContext.class.isAssignableFrom(parameter.getType())) {
+            return new ToolContext(Map.of(ToolNotifications.ASYNC_EXCHANGE_KEY, exchange));
+        }
+        return value == null ? null : JsonParser.toTypedObject(value, parameter.getType());
+    }
+
+    private static List<Method> toolMethods(Object toolObject) {
+        Class<?> type = AopUtils.isAopProxy(toolObject) ? AopUtils.getTargetClass(toolObject) : toolObject.getClass();
+        return Arrays.stream(ReflectionUtils.getDeclaredMethods(type))
+                .filter(method -> AnnotationUtils.findAnnotation(method, Tool.class) != null)
+                .filter(method -> Mono.class.isAssignableFrom(method.getReturnType()))
+                .toList();
+    }
+}
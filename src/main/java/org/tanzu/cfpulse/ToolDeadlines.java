@@ -0,0 +1,55 @@
+package org.tanzu.cfpulse;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/*
+    How long each tool call may take before it is cancelled and reported as failed. Every tool gets
+    cf.tools.deadline (default PT5M) unless cf.tools.deadlines.<tool name> says otherwise. Pushes, starts
+    and restarts wait for staging and for the instances to come up, and bulk tools work through a whole
+    space, so they get the longer deadlines below, or cf.tools.deadline when that is longer still.
+    Background jobs are not bound by any of them, since their tools return as soon as the job is submitted.
+ */
+@Component
+public class ToolDeadlines {
+
+    private static final Map<String, Duration> LONG_RUNNING = Map.of(
+            "pushApplication", Duration.ofMinutes(30),
+            "startApplication", Duration.ofMinutes(20),
+            "restartApplication", Duration.ofMinutes(20),
+            "scaleApplication", Duration.ofMinutes(20),
+            "startApplications", Duration.ofHours(1),
+            "stopApplications", Duration.ofHours(1),
+            "restartApplications", Duration.ofHours(1),
+            "scaleApplications", Duration.ofHours(1),
+            "applicationDetailsBatch", Duration.ofMinutes(15));
+
+    private final Environment environment;
+    private final Duration defaultDeadline;
+    private final Map<String, Duration> deadlines = new ConcurrentHashMap<>();
+
+    public ToolDeadlines(Environment environment) {
+        this.environment = environment;
+        this.defaultDeadline = environment.getProperty("cf.tools.deadline", Duration.class, Duration.ofMinutes(5));
+    }
+
+    public <T> Mono<T> apply(String toolName, Mono<T> call) {
+        Duration deadline = deadline(toolName);
+        return call.timeout(deadline, Mono.error(() -> new TimeoutException("Tool " + toolName +
+                " did not finish within " + deadline.toMillis() + " ms")));
+    }
+
+    Duration deadline(String toolName) {
+        return deadlines.computeIfAbsent(toolName, name -> {
+            Duration longRunning = LONG_RUNNING.getOrDefault(name, defaultDeadline);
+            return environment.getProperty("cf.tools.deadlines." + name, Duration.class,
+                    longRunning.compareTo(defaultDeadline) > 0 ? longRunning : defaultDeadline);
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package org.tanzu.cfpulse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Per-tool call timers, error counters and in-flight gauges. Each call also gets a trace id, carried in
+    the Reactor context under TRACE_ID, which the Cloud Foundry HTTP client sends and logs with every
+    request the call makes.
+ */
+@Component
+public class ToolMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(ToolMetrics.class);
+
+    public static final String TRACE_ID = "cf.traceId";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public ToolMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Mono<T> instrument(String toolName, Mono<T> call) {
+        return Mono.defer(() -> {
+            String traceId = UUID.randomUUID().toString().replace("-", "");
+            AtomicInteger active = inFlight(toolName);
+            Timer.Sample sample = Timer.start(meterRegistry);
+            active.incrementAndGet();
+            logger.debug("Tool {} started [traceId={}]", toolName, traceId);
+
+            return call
+                    .doOnError(e -> Counter.builder("mcp.tool.errors")
+                            .description("Failed MCP tool calls")
+                            .tag("tool", toolName)
+                            .tag("exception", e.getClass().getSimpleName())
+                            .register(meterRegistry)
+                            .increment())
+                    .doFinally(signal -> {
+                        active.decrementAndGet();
+                        long nanos = sample.stop(Timer.builder("mcp.tool.calls")
+                                .description("MCP tool call latency")
+                                .tag("tool", toolName)
+                                .tag("outcome", outcome(signal))
+                                .publishPercentileHistogram()
+                                .register(meterRegistry));
+                        logger.debug("Tool {} finished with {} in {} ms [traceId={}]", toolName, signal, nanos / 1_000_000, traceId);
+                    })
+                    .contextWrite(Context.of(TRACE_ID, traceId));
+        });
+    }
+
+    private AtomicInteger inFlight(String toolName) {
+        return inFlight.computeIfAbsent(toolName, name -> {
+            AtomicInteger active = new AtomicInteger();
+            Gauge.builder("mcp.tool.active", active, AtomicInteger::get)
+                    .description("MCP tool calls in flight")
+                    .tag("tool", name)
+                    .register(meterRegistry);
+            return active;
+        });
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package org.tanzu.cfpulse;
+
+import io.modelcontextprotocol.server.McpAsyncServerExchange;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.chat.model.ToolContext;
+import reactor.core.publisher.Mono;
+
+/*
+    Sends incremental updates from a running tool to the MCP client as logging notifications, through the
+    exchange ReactiveTools puts in the ToolContext, without blocking the calling thread. Notifications are
+    best effort: failures are dropped.
+ */
+public final class ToolNotifications {
+
+    static final String ASYNC_EXCHANGE_KEY = "asyncExchange";
+
+    private ToolNotifications() {
+    }
+
+    public static Mono<Void> send(ToolContext toolContext, String logger, String message) {
+        if (toolContext == null || !(toolContext.getContext().get(ASYNC_EXCHANGE_KEY) instanceof McpAsyncServerExchange exchange)) {
+            return Mono.empty();
+        }
+        return exchange.loggingNotification(new McpSchema.LoggingMessageNotification(McpSchema.LoggingLevel.INFO, logger, message))
+                .onErrorResume(e -> Mono.empty());
+    }
+}
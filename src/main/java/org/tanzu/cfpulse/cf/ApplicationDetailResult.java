@@ -0,0 +1,14 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.operations.applications.ApplicationDetail;
+
+public record ApplicationDetailResult(String name, ApplicationDetail detail, String error) {
+
+    static ApplicationDetailResult success(String name, ApplicationDetail detail) {
+        return new ApplicationDetailResult(name, detail, null);
+    }
+
+    static ApplicationDetailResult failure(String name, Throwable error) {
+        return new ApplicationDetailResult(name, null, String.valueOf(error.getMessage()));
+    }
+}
@@ -0,0 +1,64 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.client.v3.processes.ProcessState;
+import org.cloudfoundry.client.v3.processes.ProcessStatistics;
+import org.cloudfoundry.client.v3.processes.ProcessUsage;
+import org.cloudfoundry.operations.applications.ApplicationSummary;
+
+import java.util.List;
+
+/*
+    Resource usage of one application, summed over the instances of its web process. CPU is in percent of
+    one core, memory and disk in megabytes; crashes counts the crash events within the crash window.
+ */
+public record ApplicationHealth(String name, String state, int instances, int running, int crashed, double cpuPercent,
+                                long memoryUsedMb, long memoryLimitMb, long diskUsedMb, long diskLimitMb, int crashes,
+                                String error) {
+
+    private static final long MB = 1024 * 1024;
+
+    static ApplicationHealth of(ApplicationSummary application, List<? extends ProcessStatistics> statistics, int crashes) {
+        int running = 0;
+        int crashed = 0;
+        double cpu = 0;
+        long memory = 0;
+        long disk = 0;
+        for (ProcessStatistics instance : statistics) {
+            if (instance.getState() == ProcessState.RUNNING) {
+                running++;
+            } else if (instance.getState() == ProcessState.CRASHED) {
+                crashed++;
+            }
+            ProcessUsage usage = instance.getUsage();
+            if (usage != null) {
+                cpu += usage.getCpu() == null ? 0 : usage.getCpu();
+                memory += usage.getMemory() == null ? 0 : usage.getMemory();
+                disk += usage.getDisk() == null ? 0 : usage.getDisk();
+            }
+        }
+        return new ApplicationHealth(application.getName(), application.getRequestedState(), application.getInstances(),
+                running, crashed, Math.round(cpu * 10_000) / 100.0, memory / MB, limit(application.getMemoryLimit()),
+                disk / MB, limit(application.getDiskQuota()), crashes, null);
+    }
+
+    static ApplicationHealth failure(ApplicationSummary application, int crashes, Throwable error) {
+        return new ApplicationHealth(application.getName(), application.getRequestedState(), application.getInstances(),
+                0, 0, 0, 0, limit(application.getMemoryLimit()), 0, limit(application.getDiskQuota()), crashes,
+                String.valueOf(error.getMessage()));
+    }
+
+    boolean started() {
+        return "STARTED".equals(state);
+    }
+
+    /*
+        Memory the application holds against the space quota, whether or not its instances use it
+     */
+    long memoryAllocatedMb() {
+        return started() ? memoryLimitMb * instances : 0;
+    }
+
+    private static long limit(Integer megabytes) {
+        return megabytes == null ? 0 : megabytes;
+    }
+}
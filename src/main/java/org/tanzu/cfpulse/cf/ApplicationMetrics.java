@@ -0,0 +1,18 @@
+package org.tanzu.cfpulse.cf;
+
+/*
+    Request and container metrics of a tracked application over a span of its rolling window. Requests are
+    counted as seen by the router; latency is in milliseconds, CPU in percent and memory and disk in megabytes.
+    The error ratio is the share of requests that ended with a 5xx status.
+ */
+public record ApplicationMetrics(String name, long spanSeconds, long requests, double requestsPerSecond,
+                                 long serverErrors, long clientErrors, Double errorRatio, Latency latencyMs,
+                                 Container container) {
+
+    public record Latency(double p50, double p90, double p95, double p99, double max) {
+    }
+
+    public record Container(long samples, double cpuPercentAverage, double cpuPercentMax, double memoryMbAverage,
+                            double memoryMbMax, double diskMbMax) {
+    }
+}
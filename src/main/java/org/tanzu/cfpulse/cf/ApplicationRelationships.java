@@ -0,0 +1,7 @@
+package org.tanzu.cfpulse.cf;
+
+import java.util.List;
+
+public record ApplicationRelationships(String name, List<String> serviceInstances, List<String> routes,
+                                       List<ProcessSummary> processes) {
+}
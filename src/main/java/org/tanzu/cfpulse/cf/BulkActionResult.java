@@ -0,0 +1,37 @@
+package org.tanzu.cfpulse.cf;
+
+import java.util.List;
+
+public record BulkActionResult(int done, int skipped, int failed, List<ApplicationResult> applications) {
+
+    public enum Outcome {
+        DONE, SKIPPED, FAILED
+    }
+
+    /*
+        reason: why a skipped application needed no change; error: why a failed one failed
+     */
+    public record ApplicationResult(String name, Outcome outcome, String reason, String error) {
+
+        static ApplicationResult done(String name) {
+            return new ApplicationResult(name, Outcome.DONE, null, null);
+        }
+
+        static ApplicationResult skipped(String name, String reason) {
+            return new ApplicationResult(name, Outcome.SKIPPED, reason, null);
+        }
+
+        static ApplicationResult failure(String name, Throwable error) {
+            return new ApplicationResult(name, Outcome.FAILED, null, String.valueOf(error.getMessage()));
+        }
+    }
+
+    static BulkActionResult of(List<ApplicationResult> applications) {
+        return new BulkActionResult(count(applications, Outcome.DONE), count(applications, Outcome.SKIPPED),
+                count(applications, Outcome.FAILED), applications);
+    }
+
+    private static int count(List<ApplicationResult> applications, Outcome outcome) {
+        return (int) applications.stream().filter(result -> result.outcome() == outcome).count();
+    }
+}
@@ -0,0 +1,121 @@
+package org.tanzu.cfpulse.cf;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/*
+    Caps the calls in flight to one endpoint without blocking a thread. Calls over the cap wait, in
+    order, for a permit; a call that has waited longer than maxWait fails instead of piling up behind
+    a slow endpoint. Without a maxWait, calls wait until they get a permit or are cancelled.
+ */
+final class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+    private int active;
+
+    private final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                Bulkhead.this.release();
+            }
+        }
+    }
+
+    private record Waiter(MonoSink<Permit> sink, AtomicBoolean settled) {
+    }
+
+    Bulkhead(String name, int maxConcurrent, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxWait = maxWait;
+    }
+
+    <T> Mono<T> run(Supplier<Mono<T>> call) {
+        Mono<Permit> permit = acquire();
+        if (maxWait != null) {
+            permit = permit.timeout(maxWait, Mono.error(() -> new IllegalStateException("Too many concurrent calls to the Cloud Foundry " +
+                    name + " endpoint; gave up after waiting " + maxWait.toSeconds() + "s")));
+        }
+        // A permit handed to a caller that has just gone away is given back
+        permit = permit.doOnDiscard(Permit.class, Permit::release);
+        return Mono.usingWhen(permit, p -> call.get(),
+                p -> Mono.fromRunnable(p::release),
+                (p, e) -> Mono.fromRunnable(p::release),
+                p -> Mono.fromRunnable(p::release));
+    }
+
+    synchronized int active() {
+        return active;
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            boolean granted = false;
+            synchronized (this) {
+                if (active < maxConcurrent) {
+                    active++;
+                    granted = true;
+                }
+            }
+            if (granted) {
+                sink.success(new Permit());
+                return;
+            }
+            Waiter waiter = new Waiter(sink, new AtomicBoolean());
+            synchronized (this) {
+                waiting.addLast(waiter);
+            }
+            sink.onCancel(() -> {
+                if (waiter.settled().compareAndSet(false, true)) {
+                    synchronized (this) {
+                        waiting.remove(waiter);
+                    }
+                }
+            });
+            // A permit released between the two checks above would otherwise be missed
+            release(false);
+        });
+    }
+
+    private void release() {
+        release(true);
+    }
+
+    /*
+        Hands a permit to the longest-waiting caller, or returns it to the pool when no one is waiting
+     */
+    private void release(boolean returning) {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                if (returning) {
+                    active--;
+                    returning = false;
+                }
+                if (active >= maxConcurrent || waiting.isEmpty()) {
+                    return;
+                }
+                next = waiting.pollFirst();
+                active++;
+            }
+            if (next.settled().compareAndSet(false, true)) {
+                next.sink().success(new Permit());
+                return;
+            }
+            synchronized (this) {
+                active--;
+            }
+        }
+    }
+}
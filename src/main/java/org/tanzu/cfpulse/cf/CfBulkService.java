@@ -0,0 +1,275 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.client.v3.applications.ApplicationResource;
+import org.cloudfoundry.client.v3.applications.ListApplicationsRequest;
+import org.cloudfoundry.operations.DefaultCloudFoundryOperations;
+import org.cloudfoundry.operations.applications.ApplicationSummary;
+import org.cloudfoundry.operations.applications.GetApplicationRequest;
+import org.cloudfoundry.operations.applications.InstanceDetail;
+import org.cloudfoundry.operations.applications.RestartApplicationRequest;
+import org.cloudfoundry.operations.applications.ScaleApplicationRequest;
+import org.cloudfoundry.operations.applications.StartApplicationRequest;
+import org.cloudfoundry.operations.applications.StopApplicationRequest;
+import org.cloudfoundry.util.PaginationUtils;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.tanzu.cfpulse.ToolNotifications;
+import org.tanzu.cfpulse.cf.BulkActionResult.ApplicationResult;
+import org.tanzu.cfpulse.cf.CfResilience.Endpoint;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+    Start, stop, restart and scale many applications in one call. Applications are selected by name,
+    by a glob over their names, by a label selector, or by any combination of these, against the
+    space as the Cloud Controller reports it at the time. Applications already in the requested state
+    are skipped; for a start that means every instance is running or starting, so a started application
+    with crashed or down instances is restarted instead. The rest are acted on with bounded parallelism,
+    optionally in rolling batches that each finish before the next one begins. The parallelism never
+    exceeds the write bulkhead of the applications endpoint, so no action waits there behind the others
+    of its own run.
+ */
+@Service
+public class CfBulkService {
+
+    private final CfService cfService;
+    private final CfTargets cfTargets;
+    private final CfResilience cfResilience;
+    private final int defaultParallelism;
+
+    public CfBulkService(CfService cfService, CfTargets cfTargets, CfResilience cfResilience,
+                         @Value("${cf.batch.concurrency:8}") int defaultParallelism) {
+        this.cfService = cfService;
+        this.cfTargets = cfTargets;
+        this.cfResilience = cfResilience;
+        this.defaultParallelism = defaultParallelism;
+    }
+
+    private static final String NAMES_PARAM = "Names of the Cloud Foundry applications (optional)";
+    private static final String GLOB_PARAM = "Glob over application names, e.g. 'orders-*' or '*' for every application in the space (optional)";
+    private static final String LABEL_SELECTOR_PARAM = "Cloud Foundry label selector, e.g. 'env=staging,tier!=db' (optional)";
+    private static final String PARALLELISM_PARAM = "How many applications to act on at once, up to the write bulkhead size (optional)";
+    private static final String BATCH_SIZE_PARAM = "Act on the applications in rolling batches of this size, each batch finishing before the next starts (optional)";
+    private static final String TARGET_PARAM = "The Cloud Foundry foundation, organization and space of the applications (optional, defaults to the configured space)";
+    private static final String SELECTION = " Select applications by names, a glob or a label selector; when several are given an application must match all of them." +
+            " Returns the outcome for each application.";
+
+    private static final String START_APPLICATIONS = "Start several Cloud Foundry applications, skipping those whose instances are all running " +
+            "or starting and restarting started ones with crashed or down instances." + SELECTION;
+
+    @Tool(description = START_APPLICATIONS)
+    public Mono<BulkActionResult> startApplications(
+            @ToolParam(description = NAMES_PARAM, required = false) List<String> applicationNames,
+            @ToolParam(description = GLOB_PARAM, required = false) String glob,
+            @ToolParam(description = LABEL_SELECTOR_PARAM, required = false) String labelSelector,
+            @ToolParam(description = PARALLELISM_PARAM, required = false) Integer parallelism,
+            @ToolParam(description = BATCH_SIZE_PARAM, required = false) Integer batchSize,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+            ToolContext toolContext) {
+        return run("startApplications", new Selection(applicationNames, glob, labelSelector), parallelism, batchSize, target, toolContext,
+                this::startSkipReason,
+                (operations, app) -> "STARTED".equals(app.getRequestedState()) ?
+                        operations.applications().restart(RestartApplicationRequest.builder().name(app.getName()).build()) :
+                        operations.applications().start(StartApplicationRequest.builder().name(app.getName()).build()));
+    }
+
+    private static final String STOP_APPLICATIONS = "Stop several Cloud Foundry applications, skipping those already stopped." + SELECTION;
+
+    @Tool(description = STOP_APPLICATIONS)
+    public Mono<BulkActionResult> stopApplications(
+            @ToolParam(description = NAMES_PARAM, required = false) List<String> applicationNames,
+            @ToolParam(description = GLOB_PARAM, required = false) String glob,
+            @ToolParam(description = LABEL_SELECTOR_PARAM, required = false) String labelSelector,
+            @ToolParam(description = PARALLELISM_PARAM, required = false) Integer parallelism,
+            @ToolParam(description = BATCH_SIZE_PARAM, required = false) Integer batchSize,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+            ToolContext toolContext) {
+        return run("stopApplications", new Selection(applicationNames, glob, labelSelector), parallelism, batchSize, target, toolContext,
+                skipIf(app -> "STOPPED".equals(app.getRequestedState()), "already stopped"),
+                (operations, app) -> operations.applications().stop(StopApplicationRequest.builder().name(app.getName()).build()));
+    }
+
+    private static final String RESTART_APPLICATIONS = "Restart several running Cloud Foundry applications, skipping stopped ones." + SELECTION;
+
+    @Tool(description = RESTART_APPLICATIONS)
+    public Mono<BulkActionResult> restartApplications(
+            @ToolParam(description = NAMES_PARAM, required = false) List<String> applicationNames,
+            @ToolParam(description = GLOB_PARAM, required = false) String glob,
+            @ToolParam(description = LABEL_SELECTOR_PARAM, required = false) String labelSelector,
+            @ToolParam(description = PARALLELISM_PARAM, required = false) Integer parallelism,
+            @ToolParam(description = BATCH_SIZE_PARAM, required = false) Integer batchSize,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+            ToolContext toolContext) {
+        return run("restartApplications", new Selection(applicationNames, glob, labelSelector), parallelism, batchSize, target, toolContext,
+                skipIf(app -> "STOPPED".equals(app.getRequestedState()), "stopped"),
+                (operations, app) -> operations.applications().restart(RestartApplicationRequest.builder().name(app.getName()).build()));
+    }
+
+    private static final String SCALE_APPLICATIONS = "Scale the number of instances, memory, or disk size of several Cloud Foundry applications, " +
+            "skipping those already at that scale." + SELECTION;
+    private static final String INSTANCES_PARAM = "The new number of instances of each application (optional)";
+    private static final String MEMORY_PARAM = "The new memory limit, in megabytes, of each application (optional)";
+    private static final String DISK_PARAM = "The new disk size, in megabytes, of each application (optional)";
+
+    @Tool(description = SCALE_APPLICATIONS)
+    public Mono<BulkActionResult> scaleApplications(
+            @ToolParam(description = NAMES_PARAM, required = false) List<String> applicationNames,
+            @ToolParam(description = GLOB_PARAM, required = false) String glob,
+            @ToolParam(description = LABEL_SELECTOR_PARAM, required = false) String labelSelector,
+            @ToolParam(description = INSTANCES_PARAM, required = false) Integer instances,
+            @ToolParam(description = MEMORY_PARAM, required = false) Integer memory,
+            @ToolParam(description = DISK_PARAM, required = false) Integer disk,
+            @ToolParam(description = PARALLELISM_PARAM, required = false) Integer parallelism,
+            @ToolParam(description = BATCH_SIZE_PARAM, required = false) Integer batchSize,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+            ToolContext toolContext) {
+        return run("scaleApplications", new Selection(applicationNames, glob, labelSelector), parallelism, batchSize, target, toolContext,
+                skipIf(app -> (instances == null || instances.equals(app.getInstances())) &&
+                        (memory == null || memory.equals(app.getMemoryLimit())) &&
+                        (disk == null || disk.equals(app.getDiskQuota())), "already at that scale"),
+                (operations, app) -> operations.applications().scale(ScaleApplicationRequest.builder()
+                        .name(app.getName()).instances(instances).memoryLimit(memory).diskLimit(disk).build()));
+    }
+
+    record Selection(List<String> names, String glob, String labelSelector) {
+
+        boolean isEmpty() {
+            return (names == null || names.isEmpty()) && (glob == null || glob.isEmpty()) &&
+                    (labelSelector == null || labelSelector.isEmpty());
+        }
+    }
+
+    private interface Action {
+        Mono<Void> apply(DefaultCloudFoundryOperations operations, ApplicationSummary application);
+    }
+
+    /*
+        Why an application needs no change, or empty if it does
+     */
+    private interface SkipReason {
+        Mono<String> apply(CfTarget target, DefaultCloudFoundryOperations operations, ApplicationSummary application);
+    }
+
+    private static SkipReason skipIf(Predicate<ApplicationSummary> unchanged, String reason) {
+        return (target, operations, app) -> unchanged.test(app) ? Mono.just(reason) : Mono.empty();
+    }
+
+    /*
+        The summary only counts running instances, so a started application with fewer of them is looked up
+        to tell instances that are still starting from crashed or down ones
+     */
+    private Mono<String> startSkipReason(CfTarget target, DefaultCloudFoundryOperations operations, ApplicationSummary app) {
+        if (!"STARTED".equals(app.getRequestedState())) {
+            return Mono.empty();
+        }
+        if (app.getRunningInstances() != null && app.getRunningInstances() >= app.getInstances()) {
+            return Mono.just("already started");
+        }
+        return cfResilience.read(target, Endpoint.APPLICATIONS, () -> operations.applications()
+                        .get(GetApplicationRequest.builder().name(app.getName()).build()))
+                .filter(detail -> detail.getInstanceDetails().stream()
+                        .map(InstanceDetail::getState)
+                        .allMatch(state -> "RUNNING".equals(state) || "STARTING".equals(state)))
+                .map(detail -> "already started, with instances still starting");
+    }
+
+    private Mono<BulkActionResult> run(String tool, Selection selection, Integer parallelism, Integer batchSize, CfTarget target,
+                                       ToolContext toolContext, SkipReason skipReason, Action action) {
+        if (selection.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Select the applications by names, a glob or a label selector; use the glob '*' for all of them"));
+        }
+        CfTarget resolved = cfTargets.resolve(target);
+        DefaultCloudFoundryOperations operations = cfTargets.operations(resolved);
+        int concurrency = Math.min(parallelism == null || parallelism < 1 ? defaultParallelism : parallelism,
+                cfResilience.maxConcurrentWrites());
+        AtomicInteger completed = new AtomicInteger();
+
+        Function<ApplicationSummary, Mono<ApplicationResult>> act = app -> skipReason.apply(resolved, operations, app)
+                .map(reason -> ApplicationResult.skipped(app.getName(), reason))
+                .switchIfEmpty(Mono.defer(() -> cfResilience.write(resolved, Endpoint.APPLICATIONS, () -> action.apply(operations, app))
+                        .thenReturn(ApplicationResult.done(app.getName()))))
+                .onErrorResume(e -> Mono.just(ApplicationResult.failure(app.getName(), e)))
+                .flatMap(r -> ToolNotifications.send(toolContext, tool, completed.incrementAndGet() + ": " + r.name() + " " + r.outcome() +
+                                (r.reason() != null ? ": " + r.reason() : r.error() != null ? ": " + r.error() : ""))
+                        .thenReturn(r));
+
+        return select(resolved, operations, selection)
+                .flatMapMany(selected -> {
+                    Flux<ApplicationResult> missing = Flux.fromIterable(selected.missing())
+                            .map(name -> ApplicationResult.failure(name, new IllegalArgumentException("Application " + name + " does not exist")));
+                    Flux<ApplicationSummary> applications = Flux.fromIterable(selected.applications());
+                    Flux<ApplicationResult> results = batchSize == null || batchSize < 1 ?
+                            applications.flatMap(act, concurrency) :
+                            applications.buffer(batchSize).concatMap(batch -> Flux.fromIterable(batch).flatMap(act, concurrency));
+                    return Flux.concat(missing, results);
+                })
+                .collectList()
+                .map(BulkActionResult::of)
+                .doFinally(signal -> cfService.invalidateApplications(resolved));
+    }
+
+    record Selected(List<ApplicationSummary> applications, List<String> missing) {
+    }
+
+    private Mono<Selected> select(CfTarget resolved, DefaultCloudFoundryOperations operations, Selection selection) {
+        Mono<Predicate<ApplicationSummary>> labelled = selection.labelSelector() == null || selection.labelSelector().isEmpty() ?
+                Mono.just(app -> true) :
+                cfResilience.read(resolved, Endpoint.APPLICATIONS, () -> operations.getSpaceId()
+                                .flatMapMany(spaceId -> PaginationUtils.requestClientV3Resources(page -> operations.getCloudFoundryClient()
+                                        .applicationsV3().list(ListApplicationsRequest.builder()
+                                                .spaceId(spaceId)
+                                                .labelSelector(selection.labelSelector())
+                                                .page(page)
+                                                .build())))
+                                .map(ApplicationResource::getId)
+                                .collect(Collectors.toSet()))
+                        .map(ids -> app -> ids.contains(app.getId()));
+
+        // Read live rather than from the space index or cache, which may not have caught up with a recent change
+        Mono<List<ApplicationSummary>> live = cfResilience.read(resolved, Endpoint.APPLICATIONS, () -> operations.applications().list().collectList());
+
+        return Mono.zip(live, labelled).map(t -> selected(t.getT1(), selection, t.getT2()));
+    }
+
+    /*
+        The applications that match every part of the selection, and the named ones that do not exist
+     */
+    static Selected selected(List<ApplicationSummary> live, Selection selection, Predicate<ApplicationSummary> labelled) {
+        Predicate<ApplicationSummary> named = selection.names() == null || selection.names().isEmpty() ?
+                app -> true : app -> selection.names().contains(app.getName());
+        Pattern glob = selection.glob() == null || selection.glob().isEmpty() ? null : globPattern(selection.glob());
+        Predicate<ApplicationSummary> globbed = glob == null ? app -> true : app -> glob.matcher(app.getName()).matches();
+
+        List<ApplicationSummary> applications = live.stream()
+                .filter(named.and(globbed).and(labelled))
+                .toList();
+        Set<String> missing = new HashSet<>(Objects.requireNonNullElse(selection.names(), List.of()));
+        live.forEach(app -> missing.remove(app.getName()));
+        return new Selected(applications, missing.stream().sorted().toList());
+    }
+
+    static Pattern globPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : glob.split("(?=[*?])|(?<=[*?])")) {
+            regex.append(switch (part) {
+                case "*" -> ".*";
+                case "?" -> ".";
+                default -> Pattern.quote(part);
+            });
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,99 @@
+package org.tanzu.cfpulse.cf;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.core.env.Environment;
+import org.tanzu.cfpulse.cf.CfResilience.Endpoint;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/*
+    Read-through cache for the Cloud Controller list/detail calls made by the services. Each resource
+    has its own TTL (cf.cache.ttl.<resource>) and a bounded size (cf.cache.maximum-size). Loads are
+    single-flight: concurrent callers for the same key share one in-flight request. Keys are scoped
+    to the target (foundation, organization and space) they were loaded from. Hit, miss and
+    eviction counters are published as cache.* meters tagged with the resource name. Loads go through
+    CfResilience as reads of the Cloud Controller endpoint the resource comes from, so they are
+    retried, throttled and guarded along with the writes to it.
+ */
+@Component
+public class CfCache {
+
+    enum Resource {
+        APPLICATIONS("applications", Endpoint.APPLICATIONS, Duration.ofSeconds(15)),
+        APPLICATION_DETAILS("application-details", Endpoint.APPLICATIONS, Duration.ofSeconds(15)),
+        SERVICE_INSTANCES("service-instances", Endpoint.SERVICE_INSTANCES, Duration.ofSeconds(30)),
+        SERVICE_INSTANCE_DETAILS("service-instance-details", Endpoint.SERVICE_INSTANCES, Duration.ofSeconds(30)),
+        SERVICE_OFFERINGS("service-offerings", Endpoint.SERVICE_OFFERINGS, Duration.ofMinutes(5)),
+        ORGANIZATIONS("organizations", Endpoint.ORGANIZATIONS, Duration.ofMinutes(5)),
+        SPACES("spaces", Endpoint.SPACES, Duration.ofMinutes(5)),
+        APPLICATION_STATISTICS("application-statistics", Endpoint.APPLICATIONS, Duration.ofSeconds(30)),
+        CRASH_EVENTS("crash-events", Endpoint.EVENTS, Duration.ofSeconds(30)),
+        SPACE_QUOTAS("space-quotas", Endpoint.SPACE_QUOTAS, Duration.ofMinutes(5));
+
+        private final String cacheName;
+        // Loads are guarded as reads of this endpoint; writes to the resource go through the same one
+        private final Endpoint endpoint;
+        private final Duration defaultTtl;
+
+        Resource(String cacheName, Endpoint endpoint, Duration defaultTtl) {
+            this.cacheName = cacheName;
+            this.endpoint = endpoint;
+            this.defaultTtl = defaultTtl;
+        }
+    }
+
+    static final String ALL = "*";
+
+    private record Key(CfTarget target, Object name) {
+    }
+
+    private final CfResilience cfResilience;
+    private final boolean enabled;
+    private final Map<Resource, AsyncCache<Key, Object>> caches = new EnumMap<>(Resource.class);
+
+    public CfCache(Environment environment, MeterRegistry meterRegistry, CfResilience cfResilience) {
+        this.cfResilience = cfResilience;
+        this.enabled = environment.getProperty("cf.cache.enabled", Boolean.class, true);
+        long maximumSize = environment.getProperty("cf.cache.maximum-size", Long.class, 500L);
+
+        for (Resource resource : Resource.values()) {
+            Duration ttl = environment.getProperty("cf.cache.ttl." + resource.cacheName, Duration.class, resource.defaultTtl);
+            AsyncCache<Key, Object> cache = Caffeine.newBuilder()
+                    .expireAfterWrite(ttl)
+                    .maximumSize(maximumSize)
+                    .recordStats()
+                    .buildAsync();
+            caches.put(resource, CaffeineCacheMetrics.monitor(meterRegistry, cache, "cf." + resource.cacheName));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Mono<T> get(Resource resource, CfTarget target, Object name, Supplier<Mono<T>> loader) {
+        Mono<T> load = cfResilience.read(target, resource.endpoint, loader);
+        if (!enabled) {
+            return load;
+        }
+        AsyncCache<Key, Object> cache = caches.get(resource);
+        // Cancellation is suppressed so that one caller giving up does not cancel the load shared with others.
+        // The load runs in the context of the caller that starts it, so it keeps that tool call's trace id.
+        return Mono.deferContextual(context -> Mono.fromFuture(() -> (CompletableFuture<T>)
+                cache.get(new Key(target, name), (k, executor) -> load.contextWrite(context).toFuture()), true));
+    }
+
+    void invalidate(Resource resource, CfTarget target, Object name) {
+        caches.get(resource).synchronous().invalidate(new Key(target, name));
+    }
+
+    void invalidateAll(Resource resource, CfTarget target) {
+        caches.get(resource).synchronous().asMap().keySet().removeIf(key -> key.target().equals(target));
+    }
+}
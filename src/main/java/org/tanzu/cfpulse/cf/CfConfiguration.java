@@ -8,29 +8,51 @@ import org.cloudfoundry.reactor.DefaultConnectionContext;
 import org.cloudfoundry.reactor.TokenProvider;
 import org.cloudfoundry.reactor.client.ReactorCloudFoundryClient;
 import org.cloudfoundry.reactor.doppler.ReactorDopplerClient;
+import org.cloudfoundry.reactor.tokenprovider.AbstractUaaTokenProvider;
+import org.cloudfoundry.reactor.tokenprovider.ClientCredentialsGrantTokenProvider;
 import org.cloudfoundry.reactor.tokenprovider.PasswordGrantTokenProvider;
 import org.cloudfoundry.reactor.uaa.ReactorUaaClient;
 import org.cloudfoundry.uaa.UaaClient;
+import reactor.netty.http.client.HttpClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.tanzu.cfpulse.cf.CfTargets.FoundationProperties;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+
+/*
+    Clients for the default foundation. The static factories are shared with CfTargets, which builds
+    the same set of clients for every additional foundation under cf.foundations.
+ */
 @Configuration
+@EnableConfigurationProperties(CfConnectionProperties.class)
 public class CfConfiguration {
     @Bean
-    DefaultConnectionContext connectionContext(@Value("${cf.apiHost}") String apiHost) {
-        return DefaultConnectionContext.builder()
-                .apiHost(apiHost)
-                .build();
+    DefaultConnectionContext connectionContext(@Value("${cf.apiHost}") String apiHost, CfConnectionProperties connectionProperties,
+                                               CfResilience cfResilience) {
+        return newConnectionContext(apiHost, connectionProperties, cfResilience.rateLimit(CfTargets.DEFAULT_FOUNDATION));
     }
 
     @Bean
-    PasswordGrantTokenProvider tokenProvider(@Value("${cf.username}") String username,
-                                             @Value("${cf.password}") String password) {
-        return PasswordGrantTokenProvider.builder()
-                .password(password)
-                .username(username)
-                .build();
+    FoundationProperties defaultFoundation(@Value("${cf.apiHost}") String apiHost,
+                                           @Value("${cf.username:}") String username,
+                                           @Value("${cf.password:}") String password,
+                                           @Value("${cf.organization}") String organization,
+                                           @Value("${cf.space}") String space,
+                                           @Value("${cf.grant-type:password}") String grantType,
+                                           @Value("${cf.client-id:#{null}}") String clientId,
+                                           @Value("${cf.client-secret:#{null}}") String clientSecret) {
+        return new FoundationProperties(apiHost, username, password, organization, space, grantType, clientId, clientSecret);
+    }
+
+    @Bean
+    RefreshingTokenProvider tokenProvider(FoundationProperties defaultFoundation,
+                                          @Value("${cf.token.refresh-ahead:PT2M}") Duration refreshAhead) {
+        return newTokenProvider(defaultFoundation, refreshAhead);
     }
 
     @Bean
@@ -63,6 +85,75 @@ public class CfConfiguration {
                                                          UaaClient uaaClient,
                                                          @Value("${cf.organization}") String organization,
                                                          @Value("${cf.space}") String space) {
+        return newOperations(cloudFoundryClient, dopplerClient, uaaClient, organization, space);
+    }
+
+    /*
+        The API host may carry a port, as in localhost:8080, for foundations not served on the default one
+     */
+    static DefaultConnectionContext newConnectionContext(String apiHost, CfConnectionProperties connectionProperties, RateLimit rateLimit) {
+        int colon = apiHost.lastIndexOf(':');
+        String host = colon < 0 ? apiHost : apiHost.substring(0, colon);
+        DefaultConnectionContext.Builder builder = DefaultConnectionContext.builder()
+                .apiHost(host)
+                .port(colon < 0 ? Optional.empty() : Optional.of(Integer.parseInt(apiHost.substring(colon + 1))))
+                .keepAlive(connectionProperties.keepAlive())
+                .secure(connectionProperties.secure())
+                .connectTimeout(Optional.ofNullable(connectionProperties.connectTimeout()))
+                .sslHandshakeTimeout(Optional.ofNullable(connectionProperties.sslHandshakeTimeout()))
+                .additionalHttpClientConfiguration(httpClient ->
+                        HttpClientInstrumentation.instrument(configure(httpClient, host, connectionProperties), rateLimit));
+        if (connectionProperties.poolSize() != null) {
+            builder.connectionPoolSize(connectionProperties.poolSize());
+        }
+        if (connectionProperties.threadPoolSize() != null) {
+            builder.threadPoolSize(connectionProperties.threadPoolSize());
+        }
+        return builder.build();
+    }
+
+    /*
+        The connection context is shared with the UAA and Doppler clients, so the response timeout is set
+        per request and only on Cloud Controller ones; a firehose or log stream can be quiet for far longer.
+     */
+    private static HttpClient configure(HttpClient httpClient, String apiHost, CfConnectionProperties connectionProperties) {
+        HttpClient configured = httpClient.compress(connectionProperties.compress());
+        Duration responseTimeout = connectionProperties.responseTimeout();
+        if (responseTimeout != null) {
+            configured = configured.doOnRequest((request, connection) -> {
+                if (apiHost.equalsIgnoreCase(URI.create(request.resourceUrl()).getHost())) {
+                    request.responseTimeout(responseTimeout);
+                }
+            });
+        }
+        return configured;
+    }
+
+    static RefreshingTokenProvider newTokenProvider(FoundationProperties foundation, Duration refreshAhead) {
+        AbstractUaaTokenProvider tokenProvider = switch (foundation.grantType()) {
+            case "password" -> {
+                PasswordGrantTokenProvider.Builder builder = PasswordGrantTokenProvider.builder()
+                        .password(foundation.password())
+                        .username(foundation.username());
+                // Without a client the cf CLI's public client is used
+                if (foundation.clientId() != null) {
+                    builder.clientId(foundation.clientId())
+                            .clientSecret(Optional.ofNullable(foundation.clientSecret()).orElse(""));
+                }
+                yield builder.build();
+            }
+            case "client_credentials" -> ClientCredentialsGrantTokenProvider.builder()
+                    .clientId(foundation.clientId())
+                    .clientSecret(foundation.clientSecret())
+                    .build();
+            default -> throw new IllegalArgumentException("Unsupported grant type " + foundation.grantType() +
+                    "; use password or client_credentials");
+        };
+        return new RefreshingTokenProvider(tokenProvider, refreshAhead);
+    }
+
+    static DefaultCloudFoundryOperations newOperations(CloudFoundryClient cloudFoundryClient, DopplerClient dopplerClient,
+                                                       UaaClient uaaClient, String organization, String space) {
         return DefaultCloudFoundryOperations.builder()
                 .cloudFoundryClient(cloudFoundryClient)
                 .dopplerClient(dopplerClient)
@@ -72,4 +163,3 @@ public class CfConfiguration {
                 .build();
     }
 }
-
@@ -0,0 +1,30 @@
+package org.tanzu.cfpulse.cf;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/*
+    Tuning for the reactor-netty client behind every Cloud Foundry connection context. Settings left
+    unset keep the cf-java-client defaults. Applies to every foundation.
+ */
+@ConfigurationProperties("cf.connection")
+public record CfConnectionProperties(
+        // Maximum connections per foundation; also bounds the requests waiting for one
+        Integer poolSize,
+        // Event loop threads per foundation
+        Integer threadPoolSize,
+        @DefaultValue("true") boolean keepAlive,
+        Duration connectTimeout,
+        Duration sslHandshakeTimeout,
+        // Longest silence allowed while reading a Cloud Controller response, counted from the request being
+        // sent and restarted by every read; UAA and Doppler requests are not limited
+        Duration responseTimeout,
+        // Ask for gzip-compressed responses
+        @DefaultValue("true") boolean compress,
+        // Connections to open against the default foundation once the server has started
+        @DefaultValue("0") int warmUpConnections,
+        // TLS; turned off only to reach a local stub Cloud Controller over plain HTTP
+        @DefaultValue("true") boolean secure) {
+}
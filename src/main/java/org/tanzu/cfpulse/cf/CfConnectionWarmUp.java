@@ -0,0 +1,51 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.client.CloudFoundryClient;
+import org.cloudfoundry.client.v2.info.GetInfoRequest;
+import org.cloudfoundry.reactor.ConnectionContext;
+import org.cloudfoundry.reactor.TokenProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+/*
+    Fetches a token once the server has started, which also starts its background refresh, and opens
+    cf.connection.warm-up-connections connections to the Cloud Controller. The first tool calls then
+    pay for neither the UAA round trip nor the TLS handshakes.
+ */
+@Component
+public class CfConnectionWarmUp {
+
+    private static final Logger logger = LoggerFactory.getLogger(CfConnectionWarmUp.class);
+
+    private final ConnectionContext connectionContext;
+    private final TokenProvider tokenProvider;
+    private final CloudFoundryClient cloudFoundryClient;
+    private final int connections;
+
+    public CfConnectionWarmUp(ConnectionContext connectionContext, TokenProvider tokenProvider,
+                              CloudFoundryClient cloudFoundryClient, CfConnectionProperties connectionProperties) {
+        this.connectionContext = connectionContext;
+        this.tokenProvider = tokenProvider;
+        this.cloudFoundryClient = cloudFoundryClient;
+        this.connections = connectionProperties.warmUpConnections();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void warmUp() {
+        long started = System.nanoTime();
+        tokenProvider.getToken(connectionContext)
+                .thenMany(Flux.range(0, connections)
+                        .flatMap(i -> cloudFoundryClient.info().get(GetInfoRequest.builder().build()), Math.max(connections, 1)))
+                .then()
+                .subscribe(null,
+                        e -> logger.warn("Connection warm-up failed: {}", e.getMessage()),
+                        () -> logger.info("Fetched a token and warmed up {} connections in {} ms", connections,
+                                Duration.ofNanos(System.nanoTime() - started).toMillis()));
+    }
+}
@@ -0,0 +1,155 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.client.v2.spacequotadefinitions.GetSpaceQuotaDefinitionRequest;
+import org.cloudfoundry.client.v2.spacequotadefinitions.SpaceQuotaDefinitionEntity;
+import org.cloudfoundry.client.v2.spaces.GetSpaceRequest;
+import org.cloudfoundry.client.v3.applications.GetApplicationProcessStatisticsRequest;
+import org.cloudfoundry.client.v3.applications.GetApplicationProcessStatisticsResponse;
+import org.cloudfoundry.client.v3.auditevents.AuditEventResource;
+import org.cloudfoundry.client.v3.auditevents.ListAuditEventsRequest;
+import org.cloudfoundry.client.v3.processes.ProcessStatisticsResource;
+import org.cloudfoundry.operations.DefaultCloudFoundryOperations;
+import org.cloudfoundry.operations.applications.ApplicationSummary;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.tanzu.cfpulse.cf.CfCache.Resource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.tanzu.cfpulse.cf.CfCache.ALL;
+
+/*
+    Summarizes the health and resource usage of a space in one call. The process statistics of every
+    started application are fetched concurrently and cached for a short window (cf.cache.ttl.application-statistics).
+    Cached statistics are keyed by the application's state and instance counts, so an application that was
+    started, stopped, scaled or lost an instance since the last call is fetched again while the rest are reused.
+ */
+@Service
+public class CfHealthService {
+
+    private static final String CRASH_EVENT = "audit.app.process.crash";
+    private static final int CRASH_EVENTS_PAGE_SIZE = 200;
+
+    private final CfService cfService;
+    private final CfTargets cfTargets;
+    private final CfCache cfCache;
+    private final int concurrency;
+    private final Duration crashWindow;
+
+    public CfHealthService(CfService cfService, CfTargets cfTargets, CfCache cfCache,
+                           @Value("${cf.batch.concurrency:8}") int concurrency,
+                           @Value("${cf.health.crash-window:PT24H}") Duration crashWindow) {
+        this.cfService = cfService;
+        this.cfTargets = cfTargets;
+        this.cfCache = cfCache;
+        this.concurrency = concurrency;
+        this.crashWindow = crashWindow;
+    }
+
+    private static final String SPACE_HEALTH = "Summarize the health and resource usage of my Cloud Foundry space: " +
+            "CPU, memory and disk use, crashed instances and recent crashes of every application, totals compared with " +
+            "the space quota, warnings, and the applications ranked by the chosen resource";
+    private static final String SORT_BY_PARAM = "Rank applications by 'memory' (default), 'cpu', 'disk' or 'crashes' (optional)";
+    private static final String TOP_PARAM = "Number of ranked applications to return (optional, defaults to 10)";
+    private static final String TARGET_PARAM = "The Cloud Foundry foundation, organization and space (optional, defaults to the configured space)";
+
+    @Tool(description = SPACE_HEALTH)
+    public Mono<SpaceHealth> spaceHealth(@ToolParam(description = SORT_BY_PARAM, required = false) String sortBy,
+                                         @ToolParam(description = TOP_PARAM, required = false) Integer top,
+                                         @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+        if (resolved.space() == null) {
+            return Mono.error(new IllegalArgumentException("A space is needed to summarize its health"));
+        }
+        Comparator<ApplicationHealth> ranking = ranking(sortBy);
+        DefaultCloudFoundryOperations operations = cfTargets.operations(resolved);
+
+        return Mono.zip(cfService.applications(resolved), crashes(resolved, operations), spaceQuota(resolved, operations))
+                .flatMap(t -> Flux.fromIterable(t.getT1())
+                        .flatMap(app -> {
+                            int crashes = t.getT2().getOrDefault(app.getId(), 0);
+                            return statistics(resolved, operations, app)
+                                    .map(statistics -> ApplicationHealth.of(app, statistics, crashes))
+                                    .onErrorResume(e -> Mono.just(ApplicationHealth.failure(app, crashes, e)));
+                        }, concurrency)
+                        .collectList()
+                        .map(applications -> SpaceHealth.of(resolved.space(), t.getT3(), applications, ranking,
+                                top == null || top < 1 ? 10 : top)));
+    }
+
+    private record StatisticsKey(String applicationId, String requestedState, Integer instances, Integer runningInstances) {
+    }
+
+    private Mono<List<ProcessStatisticsResource>> statistics(CfTarget resolved, DefaultCloudFoundryOperations operations,
+                                                             ApplicationSummary application) {
+        if (!"STARTED".equals(application.getRequestedState())) {
+            return Mono.just(List.of());
+        }
+        StatisticsKey key = new StatisticsKey(application.getId(), application.getRequestedState(),
+                application.getInstances(), application.getRunningInstances());
+        return cfCache.get(Resource.APPLICATION_STATISTICS, resolved, key,
+                () -> operations.getCloudFoundryClient().applicationsV3()
+                        .getProcessStatistics(GetApplicationProcessStatisticsRequest.builder()
+                                .applicationId(application.getId())
+                                .type("web")
+                                .build())
+                        .map(GetApplicationProcessStatisticsResponse::getResources));
+    }
+
+    /*
+        Number of crash events per application id within the crash window, from the latest page of crash events
+     */
+    private Mono<Map<String, Integer>> crashes(CfTarget resolved, DefaultCloudFoundryOperations operations) {
+        return cfCache.get(Resource.CRASH_EVENTS, resolved, ALL, () -> operations.getSpaceId()
+                .flatMap(spaceId -> operations.getCloudFoundryClient().auditEventsV3().list(ListAuditEventsRequest.builder()
+                        .spaceId(spaceId)
+                        .type(CRASH_EVENT)
+                        .orderBy("-created_at")
+                        .perPage(CRASH_EVENTS_PAGE_SIZE)
+                        .page(1)
+                        .build()))
+                .map(response -> {
+                    Instant since = Instant.now().minus(crashWindow);
+                    return response.getResources().stream()
+                            .filter(event -> Instant.parse(event.getCreatedAt()).isAfter(since))
+                            .collect(Collectors.groupingBy((AuditEventResource event) -> event.getAuditEventTarget().getId(),
+                                    Collectors.summingInt(event -> 1)));
+                }));
+    }
+
+    /*
+        The quota of the space, read by its id from the space itself rather than from the space summary,
+        which lists every application, service and domain of the space
+     */
+    private Mono<Optional<SpaceQuotaDefinitionEntity>> spaceQuota(CfTarget resolved, DefaultCloudFoundryOperations operations) {
+        return cfCache.get(Resource.SPACE_QUOTAS, resolved, resolved.space(), () -> operations.getSpaceId()
+                .flatMap(spaceId -> operations.getCloudFoundryClient().spaces()
+                        .get(GetSpaceRequest.builder().spaceId(spaceId).build()))
+                .flatMap(space -> Mono.justOrEmpty(space.getEntity().getSpaceQuotaDefinitionId()))
+                .flatMap(quotaId -> operations.getCloudFoundryClient().spaceQuotaDefinitions()
+                        .get(GetSpaceQuotaDefinitionRequest.builder().spaceQuotaDefinitionId(quotaId).build()))
+                .map(quota -> Optional.of(quota.getEntity()))
+                .defaultIfEmpty(Optional.empty()));
+    }
+
+    private static Comparator<ApplicationHealth> ranking(String sortBy) {
+        Comparator<ApplicationHealth> ranking = switch (sortBy == null ? "memory" : sortBy.toLowerCase()) {
+            case "memory" -> Comparator.comparingLong(ApplicationHealth::memoryUsedMb);
+            case "cpu" -> Comparator.comparingDouble(ApplicationHealth::cpuPercent);
+            case "disk" -> Comparator.comparingLong(ApplicationHealth::diskUsedMb);
+            case "crashes" -> Comparator.comparingInt((ApplicationHealth app) -> app.crashes() + app.crashed());
+            default -> throw new IllegalArgumentException("Unknown sort " + sortBy + "; use memory, cpu, disk or crashes");
+        };
+        return ranking.reversed().thenComparing(ApplicationHealth::name);
+    }
+}
@@ -0,0 +1,123 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.doppler.LogMessage;
+import org.cloudfoundry.operations.applications.LogsRequest;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.tanzu.cfpulse.ToolNotifications;
+import org.tanzu.cfpulse.cf.CfResilience.Endpoint;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+@Service
+public class CfLogService {
+
+    private final CfTargets cfTargets;
+    private final CfResilience cfResilience;
+    private final int bufferSize;
+    private final int maxTailSeconds;
+
+    public CfLogService(CfTargets cfTargets, CfResilience cfResilience,
+                        @Value("${cf.logs.buffer-size:500}") int bufferSize,
+                        @Value("${cf.logs.max-tail-seconds:120}") int maxTailSeconds) {
+        this.cfTargets = cfTargets;
+        this.cfResilience = cfResilience;
+        this.bufferSize = bufferSize;
+        this.maxTailSeconds = maxTailSeconds;
+    }
+
+    private static final String NAME_PARAM = "Name of the Cloud Foundry application";
+    private static final String SOURCE_TYPE_PARAM = "Only return log lines from this source type, e.g. APP, RTR, STG, CELL or APP/PROC/WEB (optional)";
+    private static final String INSTANCE_INDEX_PARAM = "Only return log lines from this application instance index (optional)";
+    private static final String PATTERN_PARAM = "Only return log lines whose message matches this regular expression (optional)";
+    private static final String LIMIT_PARAM = "Maximum number of log lines to return (optional)";
+    private static final String TARGET_PARAM = "The Cloud Foundry foundation, organization and space of the application (optional, defaults to the configured space)";
+
+    private static final String RECENT_LOGS = "Return the recent log lines of a Cloud Foundry application, oldest first";
+
+    @Tool(description = RECENT_LOGS)
+    public Mono<List<LogLine>> recentLogs(@ToolParam(description = NAME_PARAM) String applicationName,
+                                          @ToolParam(description = SOURCE_TYPE_PARAM, required = false) String sourceType,
+                                          @ToolParam(description = INSTANCE_INDEX_PARAM, required = false) Integer instanceIndex,
+                                          @ToolParam(description = PATTERN_PARAM, required = false) String pattern,
+                                          @ToolParam(description = LIMIT_PARAM, required = false) Integer limit,
+                                          @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        if (limit != null && limit < 0) {
+            return Mono.error(new IllegalArgumentException("The limit must be zero or more, but was " + limit));
+        }
+        int maxLines = limit == null ? bufferSize : Math.min(limit, bufferSize);
+        if (maxLines == 0) {
+            return Mono.just(List.of());
+        }
+        CfTarget resolved = cfTargets.resolve(target);
+        LogsRequest request = LogsRequest.builder().name(applicationName).recent(true).build();
+
+        return cfResilience.read(resolved, Endpoint.DOPPLER, () -> {
+            // A fresh buffer per attempt, so a retried read does not repeat the lines of the failed one
+            LogRingBuffer buffer = new LogRingBuffer(maxLines);
+            return cfTargets.operations(resolved).applications().logs(request)
+                    .filter(logFilter(sourceType, instanceIndex, pattern))
+                    .map(LogLine::from)
+                    .doOnNext(buffer::add)
+                    .then(Mono.fromSupplier(() -> buffer.snapshot().stream()
+                            .sorted(Comparator.comparing(LogLine::timestamp))
+                            .toList()));
+        });
+    }
+
+    private static final String TAIL_LOGS = "Stream the log lines of a Cloud Foundry application for a number of seconds. " +
+            "Lines are sent as notifications while they arrive, and the most recent lines are returned at the end.";
+    private static final String DURATION_PARAM = "How many seconds to tail the logs for (optional, defaults to 10)";
+
+    @Tool(description = TAIL_LOGS)
+    public Mono<LogTail> tailLogs(@ToolParam(description = NAME_PARAM) String applicationName,
+                                  @ToolParam(description = DURATION_PARAM, required = false) Integer durationSeconds,
+                                  @ToolParam(description = SOURCE_TYPE_PARAM, required = false) String sourceType,
+                                  @ToolParam(description = INSTANCE_INDEX_PARAM, required = false) Integer instanceIndex,
+                                  @ToolParam(description = PATTERN_PARAM, required = false) String pattern,
+                                  @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+                                  ToolContext toolContext) {
+        CfTarget resolved = cfTargets.resolve(target);
+        LogsRequest request = LogsRequest.builder().name(applicationName).recent(false).build();
+        Duration duration = Duration.ofSeconds(Math.min(durationSeconds == null ? 10 : durationSeconds, maxTailSeconds));
+        LogRingBuffer buffer = new LogRingBuffer(bufferSize);
+        AtomicLong notificationsDropped = new AtomicLong();
+
+        return cfResilience.stream(resolved, Endpoint.DOPPLER, () -> cfTargets.operations(resolved).applications().logs(request))
+                .take(duration)
+                .filter(logFilter(sourceType, instanceIndex, pattern))
+                .map(LogLine::from)
+                .doOnNext(buffer::add)
+                // A chatty app must not queue up notifications faster than the client takes them
+                .onBackpressureDrop(line -> notificationsDropped.incrementAndGet())
+                .concatMap(line -> ToolNotifications.send(toolContext, "tailLogs", line.toString()))
+                .then(Mono.fromSupplier(() -> new LogTail(buffer.snapshot(), buffer.written(),
+                        buffer.overwritten(), notificationsDropped.get())));
+    }
+
+    private static Predicate<LogMessage> logFilter(String sourceType, Integer instanceIndex, String pattern) {
+        Predicate<LogMessage> filter = logMessage -> true;
+        if (sourceType != null && !sourceType.isEmpty()) {
+            filter = filter.and(logMessage -> logMessage.getSourceType() != null &&
+                    logMessage.getSourceType().regionMatches(true, 0, sourceType, 0, sourceType.length()));
+        }
+        if (instanceIndex != null) {
+            String instance = String.valueOf(instanceIndex);
+            filter = filter.and(logMessage -> instance.equals(logMessage.getSourceInstance()));
+        }
+        if (pattern != null && !pattern.isEmpty()) {
+            Pattern regex = Pattern.compile(pattern);
+            filter = filter.and(logMessage -> logMessage.getMessage() != null && regex.matcher(logMessage.getMessage()).find());
+        }
+        return filter;
+    }
+}
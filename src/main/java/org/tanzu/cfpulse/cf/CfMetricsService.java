@@ -0,0 +1,236 @@
+package org.tanzu.cfpulse.cf;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.cloudfoundry.doppler.ContainerMetric;
+import org.cloudfoundry.doppler.Envelope;
+import org.cloudfoundry.doppler.HttpStartStop;
+import org.cloudfoundry.doppler.PeerType;
+import org.cloudfoundry.doppler.StreamRequest;
+import org.cloudfoundry.operations.DefaultCloudFoundryOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.tanzu.cfpulse.cf.CfResilience.Endpoint;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Streams the Doppler envelopes of selected applications into rolling metric windows, so that latency
+    percentiles, request rates and error ratios over the last minutes can be answered without a metrics
+    backend. Each tracked application holds one MetricWindow of cf.metrics.window (default PT5M) in slots of
+    cf.metrics.resolution (default PT10S), and at most cf.metrics.max-applications are tracked at once.
+ */
+@Service
+public class CfMetricsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CfMetricsService.class);
+
+    private record Key(CfTarget target, String name) {
+    }
+
+    private static final class Tracker {
+        private final String name;
+        private final CfTarget target;
+        private final MetricWindow window;
+        private final Instant trackedSince = Instant.now();
+        private final AtomicLong envelopes = new AtomicLong();
+        private volatile String error;
+        private volatile Disposable subscription = Disposables.disposed();
+
+        private Tracker(String name, CfTarget target, MetricWindow window) {
+            this.name = name;
+            this.target = target;
+            this.window = window;
+        }
+
+        private TrackedApplication status() {
+            return new TrackedApplication(name, target, trackedSince, envelopes.get(), error);
+        }
+    }
+
+    private final CfService cfService;
+    private final CfTargets cfTargets;
+    private final CfResilience cfResilience;
+    private final Duration window;
+    private final Duration resolution;
+    private final int maxApplications;
+    private final Map<Key, Tracker> trackers = new ConcurrentHashMap<>();
+    // Trackers counted against cf.metrics.max-applications; taken and given back with the map entry
+    private final AtomicInteger tracked = new AtomicInteger();
+
+    public CfMetricsService(CfService cfService, CfTargets cfTargets, CfResilience cfResilience, MeterRegistry meterRegistry,
+                            @Value("${cf.metrics.window:PT5M}") Duration window,
+                            @Value("${cf.metrics.resolution:PT10S}") Duration resolution,
+                            @Value("${cf.metrics.max-applications:20}") int maxApplications) {
+        this.cfService = cfService;
+        this.cfTargets = cfTargets;
+        this.cfResilience = cfResilience;
+        this.window = window;
+        this.resolution = resolution;
+        this.maxApplications = maxApplications;
+        Gauge.builder("cf.metrics.tracked", trackers, Map::size)
+                .description("Applications whose envelopes are being streamed into metric windows")
+                .register(meterRegistry);
+    }
+
+    private static final String NAME_PARAM = "Name of the Cloud Foundry application";
+    private static final String TARGET_PARAM = "The Cloud Foundry foundation, organization and space of the application (optional, defaults to the configured space)";
+
+    private static final String TRACK_METRICS = "Start collecting the request latency, request rate, error ratio and container " +
+            "usage of a Cloud Foundry application, so that applicationMetrics can answer for the last few minutes";
+
+    @Tool(description = TRACK_METRICS)
+    public Mono<TrackedApplication> trackApplicationMetrics(@ToolParam(description = NAME_PARAM) String applicationName,
+                                                            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+        Key key = new Key(resolved, applicationName);
+        Tracker existing = trackers.get(key);
+        if (existing != null) {
+            return Mono.just(existing.status());
+        }
+
+        return cfService.applications(resolved)
+                .flatMap(applications -> Mono.justOrEmpty(applications.stream()
+                        .filter(app -> app.getName().equals(applicationName))
+                        .findFirst()))
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Application " + applicationName + " does not exist")))
+                .map(application -> {
+                    Tracker tracker = new Tracker(applicationName, resolved, new MetricWindow(window, resolution));
+                    // The limit is checked and the tracker added in one step, so concurrent calls cannot overshoot it
+                    Tracker current = trackers.compute(key, (k, previous) -> {
+                        if (previous != null) {
+                            return previous;
+                        }
+                        if (tracked.incrementAndGet() > maxApplications) {
+                            tracked.decrementAndGet();
+                            throw new IllegalStateException("Already tracking " + maxApplications +
+                                    " applications; stop tracking one with untrackApplicationMetrics first");
+                        }
+                        return tracker;
+                    });
+                    if (current != tracker) {
+                        return current.status();
+                    }
+                    tracker.subscription = stream(resolved, application.getId(), tracker);
+                    if (trackers.get(key) != tracker) {
+                        // Untracked while the stream was being opened
+                        tracker.subscription.dispose();
+                    }
+                    logger.info("Tracking metrics of application {} in {}", applicationName, resolved);
+                    return tracker.status();
+                });
+    }
+
+    private static final String UNTRACK_METRICS = "Stop collecting the metrics of a Cloud Foundry application and discard them";
+
+    @Tool(description = UNTRACK_METRICS)
+    public Mono<TrackedApplication> untrackApplicationMetrics(@ToolParam(description = NAME_PARAM) String applicationName,
+                                                              @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        Tracker tracker = trackers.remove(new Key(cfTargets.resolve(target), applicationName));
+        if (tracker == null) {
+            return Mono.error(new IllegalArgumentException("The metrics of application " + applicationName + " are not being tracked"));
+        }
+        tracked.decrementAndGet();
+        tracker.subscription.dispose();
+        logger.info("Stopped tracking metrics of application {}", applicationName);
+        return Mono.just(tracker.status());
+    }
+
+    private static final String TRACKED_APPLICATIONS = "List the Cloud Foundry applications whose metrics are being collected";
+
+    @Tool(description = TRACKED_APPLICATIONS)
+    public Mono<List<TrackedApplication>> trackedApplications() {
+        return Mono.just(trackers.values().stream()
+                .map(Tracker::status)
+                .sorted(Comparator.comparing(TrackedApplication::name))
+                .toList());
+    }
+
+    private static final String APPLICATION_METRICS = "Return the request count and rate, 5xx error ratio, latency percentiles " +
+            "(p50, p90, p95, p99) and CPU, memory and disk use of a tracked Cloud Foundry application over the last minutes";
+    private static final String SPAN_PARAM = "How many of the most recent seconds to cover (optional, defaults to the whole window)";
+
+    @Tool(description = APPLICATION_METRICS)
+    public Mono<ApplicationMetrics> applicationMetrics(@ToolParam(description = NAME_PARAM) String applicationName,
+                                                       @ToolParam(description = SPAN_PARAM, required = false) Integer spanSeconds,
+                                                       @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        Tracker tracker = trackers.get(new Key(cfTargets.resolve(target), applicationName));
+        if (tracker == null) {
+            return Mono.error(new IllegalArgumentException("The metrics of application " + applicationName +
+                    " are not being tracked; start with trackApplicationMetrics"));
+        }
+        Duration span = spanSeconds == null || spanSeconds < 1 ? window : Duration.ofSeconds(spanSeconds);
+        return Mono.just(tracker.window.snapshot(applicationName, tracker.trackedSince.toEpochMilli(), System.currentTimeMillis(), span));
+    }
+
+    /*
+        The stream is resubscribed after an error, so a dropped connection only leaves a gap in the window.
+        While Doppler's circuit breaker is open the reconnects fail at once and back off.
+     */
+    private Disposable stream(CfTarget resolved, String applicationId, Tracker tracker) {
+        DefaultCloudFoundryOperations operations = cfTargets.operations(resolved);
+        return cfResilience.stream(resolved, Endpoint.DOPPLER, () -> operations.getDopplerClient()
+                        .stream(StreamRequest.builder().applicationId(applicationId).build()))
+                .doOnNext(envelope -> {
+                    if (tracker.error != null) {
+                        tracker.error = null;
+                    }
+                })
+                .doOnError(e -> {
+                    tracker.error = String.valueOf(e.getMessage());
+                    logger.warn("Metrics stream of application {} failed, reconnecting: {}", tracker.name, e.getMessage());
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                .subscribe(envelope -> record(tracker, envelope));
+    }
+
+    private static void record(Tracker tracker, Envelope envelope) {
+        tracker.envelopes.incrementAndGet();
+        if (envelope.getEventType() == null) {
+            return;
+        }
+        switch (envelope.getEventType()) {
+            case HTTP_START_STOP -> {
+                HttpStartStop request = envelope.getHttpStartStop();
+                // Count each request once, as the router saw it
+                if (request.getPeerType() == PeerType.CLIENT && request.getStartTimestamp() != null && request.getStopTimestamp() != null) {
+                    tracker.window.recordRequest(request.getStopTimestamp() / 1_000_000,
+                            (request.getStopTimestamp() - request.getStartTimestamp()) / 1_000,
+                            request.getStatusCode() == null ? 0 : request.getStatusCode());
+                }
+            }
+            case CONTAINER_METRIC -> {
+                ContainerMetric metric = envelope.getContainerMetric();
+                tracker.window.recordContainer(envelope.getTimestamp() == null ? System.currentTimeMillis() : envelope.getTimestamp() / 1_000_000,
+                        metric.getCpuPercentage() == null ? 0 : metric.getCpuPercentage(),
+                        metric.getMemoryBytes() == null ? 0 : metric.getMemoryBytes(),
+                        metric.getDiskBytes() == null ? 0 : metric.getDiskBytes());
+            }
+            default -> {
+            }
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        trackers.values().forEach(tracker -> tracker.subscription.dispose());
+        trackers.clear();
+        tracked.set(0);
+    }
+}
@@ -0,0 +1,283 @@
+package org.tanzu.cfpulse.cf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelException;
+import org.cloudfoundry.AbstractCloudFoundryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/*
+    Guards the Cloud Foundry calls of each foundation. A call first has to get past the endpoint's
+    circuit breaker, then waits out any throttling asked for by the foundation's rate limit, then takes
+    a permit from the endpoint's bulkhead. Reads are retried with jittered exponential backoff when the
+    failure is likely to be transient; writes are never retried, as they may have taken effect. Reads
+    and writes of the same Cloud Controller resource share one endpoint, and so one breaker, but each
+    have their own bulkhead.
+ */
+@Component
+@EnableConfigurationProperties(CfResilienceProperties.class)
+public class CfResilience {
+
+    private static final Logger logger = LoggerFactory.getLogger(CfResilience.class);
+
+    /*
+        The Cloud Controller resources calls are guarded by, and Doppler, which serves logs and
+        envelopes; named as they are tagged on the meters
+     */
+    enum Endpoint {
+        APPLICATIONS("applications"),
+        ROUTES("routes"),
+        SERVICE_INSTANCES("service-instances"),
+        SERVICE_BINDINGS("service-bindings"),
+        SERVICE_KEYS("service-keys"),
+        SERVICE_OFFERINGS("service-offerings"),
+        ORGANIZATIONS("organizations"),
+        SPACES("spaces"),
+        EVENTS("events"),
+        SPACE_QUOTAS("space-quotas"),
+        DOPPLER("doppler");
+
+        private final String tag;
+
+        Endpoint(String tag) {
+            this.tag = tag;
+        }
+
+        String tag() {
+            return tag;
+        }
+    }
+
+    private record Guarded(String foundation, Endpoint endpoint) {
+    }
+
+    private final CfResilienceProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+    private final Map<Guarded, Bulkhead> readBulkheads = new ConcurrentHashMap<>();
+    private final Map<Guarded, Bulkhead> writeBulkheads = new ConcurrentHashMap<>();
+    private final Map<Guarded, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public CfResilience(CfResilienceProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /*
+        The rate limit of a foundation, fed by the responses of its HTTP client
+     */
+    RateLimit rateLimit(String foundation) {
+        return rateLimits.computeIfAbsent(foundation, name -> {
+            RateLimit rateLimit = new RateLimit();
+            Gauge.builder("cf.rate-limit.remaining", rateLimit, RateLimit::remaining)
+                    .description("Cloud Controller requests left in the current rate limit window")
+                    .tag("foundation", name)
+                    .register(meterRegistry);
+            return rateLimit;
+        });
+    }
+
+    /*
+        The most writes of one endpoint let through at once, for callers that fan writes out
+     */
+    int maxConcurrentWrites() {
+        return properties.enabled() ? Math.max(1, properties.bulkhead().writes().maxConcurrent()) : Integer.MAX_VALUE;
+    }
+
+    <T> Mono<T> read(CfTarget target, Endpoint endpoint, Supplier<Mono<T>> call) {
+        return call(target, endpoint, true, call);
+    }
+
+    <T> Mono<T> write(CfTarget target, Endpoint endpoint, Supplier<Mono<T>> call) {
+        return call(target, endpoint, false, call);
+    }
+
+    /*
+        Long-lived streams such as log tails and metric envelopes get past the circuit breaker and the
+        rate limit like any read, but hold no bulkhead permit and are not retried, since their callers
+        decide how to resume them. Only how a stream opens counts: its first element, or its end,
+        closes the breaker, and a transient failure before then counts against it.
+     */
+    <T> Flux<T> stream(CfTarget target, Endpoint endpoint, Supplier<Flux<T>> call) {
+        if (!properties.enabled()) {
+            return Flux.defer(call);
+        }
+        Guarded guarded = new Guarded(target.foundation(), endpoint);
+        CircuitBreaker circuitBreaker = circuitBreaker(guarded);
+
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Flux.error(paused(guarded, circuitBreaker));
+            }
+            Duration delay = throttle(guarded);
+            Flux<T> stream = delay.isZero() ? Flux.defer(call) : Mono.delay(delay).thenMany(Flux.defer(call));
+            AtomicBoolean opened = new AtomicBoolean();
+            return stream
+                    .doOnNext(value -> {
+                        if (opened.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (opened.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (opened.compareAndSet(false, true)) {
+                            if (isTransient(e)) {
+                                circuitBreaker.onFailure();
+                            } else {
+                                circuitBreaker.onSuccess();
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (opened.compareAndSet(false, true)) {
+                            circuitBreaker.onCancel();
+                        }
+                    });
+        });
+    }
+
+    private <T> Mono<T> call(CfTarget target, Endpoint endpoint, boolean idempotent, Supplier<Mono<T>> call) {
+        if (!properties.enabled()) {
+            return Mono.defer(call);
+        }
+        Guarded guarded = new Guarded(target.foundation(), endpoint);
+        String name = endpoint.tag();
+        CircuitBreaker circuitBreaker = circuitBreaker(guarded);
+        Bulkhead bulkhead = idempotent ? readBulkhead(guarded) : writeBulkhead(guarded);
+
+        Mono<T> attempt = Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Mono.error(paused(guarded, circuitBreaker));
+            }
+            Duration delay = throttle(guarded);
+            AtomicBoolean sent = new AtomicBoolean();
+            Mono<T> permitted = bulkhead.run(() -> {
+                sent.set(true);
+                return call.get();
+            });
+            if (!delay.isZero()) {
+                permitted = Mono.delay(delay).then(permitted);
+            }
+            return permitted
+                    .doOnSuccess(value -> circuitBreaker.onSuccess())
+                    .doOnError(e -> {
+                        if (!sent.get()) {
+                            // Turned away by the bulkhead before reaching the endpoint, which says nothing about it
+                            circuitBreaker.onCancel();
+                        } else if (isTransient(e)) {
+                            circuitBreaker.onFailure();
+                        } else {
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnCancel(circuitBreaker::onCancel);
+        });
+        if (!idempotent) {
+            return attempt;
+        }
+        CfResilienceProperties.Retry retry = properties.retry();
+        return attempt.retryWhen(Retry.backoff(Math.max(0, retry.maxAttempts() - 1), retry.minBackoff())
+                .maxBackoff(retry.maxBackoff())
+                .jitter(retry.jitter())
+                .filter(CfResilience::isTransient)
+                .doBeforeRetry(signal -> {
+                    counter("cf.resilience.retries", "Cloud Foundry reads retried after a transient failure", guarded).increment();
+                    logger.debug("Retrying a call to {} after: {}", name, signal.failure().getMessage());
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private IllegalStateException paused(Guarded guarded, CircuitBreaker circuitBreaker) {
+        counter("cf.resilience.rejected", "Cloud Foundry calls refused by an open circuit breaker", guarded).increment();
+        return new IllegalStateException("Calls to the Cloud Foundry " + guarded.endpoint().tag() + " endpoint are paused for " +
+                circuitBreaker.secondsUntilTrial() + "s after repeated failures");
+    }
+
+    /*
+        How long to hold back a call so that the foundation's rate limit lasts until its window resets
+     */
+    private Duration throttle(Guarded guarded) {
+        RateLimit rateLimit = rateLimit(guarded.foundation());
+        Duration delay = rateLimit.delay(properties.rateLimit().reserve(), properties.rateLimit().maxDelay());
+        if (!delay.isZero()) {
+            counter("cf.resilience.throttled", "Cloud Foundry calls held back to stay within the rate limit", guarded).increment();
+            logger.debug("Holding back a call to {} for {} ms; {} requests left", guarded.endpoint().tag(), delay.toMillis(),
+                    rateLimit.remaining());
+        }
+        return delay;
+    }
+
+    /*
+        Failures worth retrying, and that count against an endpoint's circuit breaker
+     */
+    static boolean isTransient(Throwable error) {
+        Throwable e = Exceptions.unwrap(error);
+        if (e instanceof AbstractCloudFoundryException cloudFoundryException) {
+            return cloudFoundryException.getStatusCode() == 429 || cloudFoundryException.getStatusCode() >= 500;
+        }
+        return e instanceof IOException || e instanceof ChannelException || e instanceof TimeoutException ||
+                e.getCause() instanceof IOException;
+    }
+
+    private Bulkhead readBulkhead(Guarded guarded) {
+        return readBulkheads.computeIfAbsent(guarded, key ->
+                bulkhead(key, "reads", properties.bulkhead().maxConcurrent(), properties.bulkhead().maxWait()));
+    }
+
+    private Bulkhead writeBulkhead(Guarded guarded) {
+        return writeBulkheads.computeIfAbsent(guarded, key ->
+                bulkhead(key, "writes", properties.bulkhead().writes().maxConcurrent(), properties.bulkhead().writes().maxWait()));
+    }
+
+    private Bulkhead bulkhead(Guarded guarded, String calls, int maxConcurrent, Duration maxWait) {
+        Bulkhead bulkhead = new Bulkhead(guarded.endpoint().tag(), maxConcurrent, maxWait);
+        Gauge.builder("cf.resilience.bulkhead.active", bulkhead, Bulkhead::active)
+                .description("Cloud Foundry calls in flight per endpoint")
+                .tag("foundation", guarded.foundation())
+                .tag("endpoint", guarded.endpoint().tag())
+                .tag("calls", calls)
+                .register(meterRegistry);
+        return bulkhead;
+    }
+
+    private CircuitBreaker circuitBreaker(Guarded guarded) {
+        return circuitBreakers.computeIfAbsent(guarded, key -> {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(properties.circuitBreaker().failureThreshold(),
+                    properties.circuitBreaker().openDuration());
+            Gauge.builder("cf.resilience.circuit.open", circuitBreaker, breaker -> breaker.state() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                    .description("Whether calls to a Cloud Foundry endpoint are paused by its circuit breaker")
+                    .tag("foundation", key.foundation())
+                    .tag("endpoint", key.endpoint().tag())
+                    .register(meterRegistry);
+            return circuitBreaker;
+        });
+    }
+
+    private Counter counter(String name, String description, Guarded guarded) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("foundation", guarded.foundation())
+                .tag("endpoint", guarded.endpoint().tag())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,56 @@
+package org.tanzu.cfpulse.cf;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/*
+    Retry, throttling, bulkhead and circuit breaker settings for the calls made to each foundation.
+    Bulkheads and circuit breakers are kept per foundation and endpoint.
+ */
+@ConfigurationProperties("cf.resilience")
+public record CfResilienceProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue Retry retry,
+        @DefaultValue RateLimit rateLimit,
+        @DefaultValue Bulkhead bulkhead,
+        @DefaultValue CircuitBreaker circuitBreaker) {
+
+    /*
+        Only reads are retried, on 429, 5xx, timeouts and broken connections
+     */
+    public record Retry(@DefaultValue("3") int maxAttempts,
+                        @DefaultValue("PT0.5S") Duration minBackoff,
+                        @DefaultValue("PT10S") Duration maxBackoff,
+                        @DefaultValue("0.5") double jitter) {
+    }
+
+    /*
+        Once fewer than reserve requests are left in the rate limit window, calls are spread out over the
+        rest of the window, waiting at most maxDelay each
+     */
+    public record RateLimit(@DefaultValue("100") int reserve,
+                            @DefaultValue("PT30S") Duration maxDelay) {
+    }
+
+    /*
+        Reads and writes of an endpoint have bulkheads of their own, so a handful of pushes or restarts,
+        which hold their permit for minutes, cannot keep the reads of the same endpoint waiting. Calls over
+        the cap wait for a permit without a limit of their own unless maxWait is set, so that hundreds of
+        non-blocking tool calls queue rather than fail, and a write queued behind long pushes fails only
+        when its tool deadline, or the timeout of its background job, runs out.
+     */
+    public record Bulkhead(@DefaultValue("16") int maxConcurrent,
+                           Duration maxWait,
+                           @DefaultValue Writes writes) {
+
+        public record Writes(@DefaultValue("8") int maxConcurrent,
+                             Duration maxWait) {
+        }
+    }
+
+    public record CircuitBreaker(@DefaultValue("5") int failureThreshold,
+                                 @DefaultValue("PT30S") Duration openDuration) {
+    }
+}
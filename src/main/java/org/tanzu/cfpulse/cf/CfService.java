@@ -3,81 +3,172 @@ package org.tanzu.cfpulse.cf;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.cloudfoundry.operations.DefaultCloudFoundryOperations;
 import org.cloudfoundry.operations.applications.*;
 import org.cloudfoundry.operations.organizations.OrganizationSummary;
 import org.cloudfoundry.operations.services.*;
 import org.cloudfoundry.operations.spaceadmin.GetSpaceQuotaRequest;
 import org.cloudfoundry.operations.spaceadmin.SpaceQuota;
 import org.cloudfoundry.operations.spaces.SpaceSummary;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.tanzu.cfpulse.ToolNotifications;
+import org.tanzu.cfpulse.cf.CfCache.Resource;
+import org.tanzu.cfpulse.cf.CfResilience.Endpoint;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.tanzu.cfpulse.cf.CfCache.ALL;
+import static org.tanzu.cfpulse.cf.ResultShaper.FIELDS_PARAM;
+import static org.tanzu.cfpulse.cf.ResultShaper.FORMAT_PARAM;
+import static org.tanzu.cfpulse.cf.ResultShaper.LIMIT_PARAM;
+import static org.tanzu.cfpulse.cf.ResultShaper.OFFSET_PARAM;
 
 @Service
 public class CfService {
 
-    private final DefaultCloudFoundryOperations cloudFoundryOperations;
-
-    public CfService(DefaultCloudFoundryOperations defaultCloudFoundryOperations) {
-        this.cloudFoundryOperations = defaultCloudFoundryOperations;
+    private final CfTargets cfTargets;
+    private final CfCache cfCache;
+    private final SpaceIndex spaceIndex;
+    private final JobService jobService;
+    private final ResultShaper resultShaper;
+    private final CfResilience cfResilience;
+    private final ObjectMapper objectMapper;
+    private final int batchConcurrency;
+
+    public CfService(CfTargets cfTargets, CfCache cfCache, SpaceIndex spaceIndex, JobService jobService,
+                     ResultShaper resultShaper, CfResilience cfResilience, ObjectMapper objectMapper,
+                     @Value("${cf.batch.concurrency:8}") int batchConcurrency) {
+        this.cfTargets = cfTargets;
+        this.cfCache = cfCache;
+        this.spaceIndex = spaceIndex;
+        this.jobService = jobService;
+        this.resultShaper = resultShaper;
+        this.cfResilience = cfResilience;
+        this.objectMapper = objectMapper;
+        this.batchConcurrency = batchConcurrency;
     }
 
+    private static final String TARGET_PARAM = "The Cloud Foundry foundation, organization and space to act on (optional, defaults to the configured space)";
+
     /*
         Applications
     */
     private static final String APPLICATION_LIST = "Return the applications (apps) in my Cloud Foundry space";
 
     @Tool(description = APPLICATION_LIST)
-    public List<ApplicationSummary> applicationsList() {
-        return cloudFoundryOperations.applications().list().collectList().block();
+    public Mono<Object> applicationsList(
+            @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+            @ToolParam(description = OFFSET_PARAM, required = false) Integer offset,
+            @ToolParam(description = LIMIT_PARAM, required = false) Integer limit,
+            @ToolParam(description = FORMAT_PARAM, required = false) String format,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        return applications(cfTargets.resolve(target)).map(applications -> resultShaper.shapeList(applications, fields, offset, limit, format));
+    }
+
+    Mono<List<ApplicationSummary>> applications(CfTarget resolved) {
+        return fromIndex(resolved, spaceIndex::applications).orElseGet(() -> cfCache.get(Resource.APPLICATIONS, resolved, ALL,
+                () -> cfTargets.operations(resolved).applications().list().collectList()));
     }
 
     private static final String APPLICATION_DETAILS = "Gets detailed information about a Cloud Foundry application";
 
     @Tool(description = APPLICATION_DETAILS)
-    public ApplicationDetail applicationDetails(@ToolParam(description = NAME_PARAM) String applicationName) {
+    public Mono<Object> applicationDetails(@ToolParam(description = NAME_PARAM) String applicationName,
+                                             @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+                                             @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        return applicationDetail(cfTargets.resolve(target), applicationName).map(detail -> resultShaper.shape(detail, fields));
+    }
+
+    private Mono<ApplicationDetail> applicationDetail(CfTarget resolved, String applicationName) {
         GetApplicationRequest request = GetApplicationRequest.builder().name(applicationName).build();
-        return cloudFoundryOperations.applications().get(request).block();
+        return cfCache.get(Resource.APPLICATION_DETAILS, resolved, applicationName,
+                () -> cfTargets.operations(resolved).applications().get(request));
     }
 
+    private static final String APPLICATION_DETAILS_BATCH = "Gets detailed information about several Cloud Foundry applications at once. " +
+            "Leave the list of names empty to get every application in the space. Each result carries either the detail or an error.";
+    private static final String NAMES_PARAM = "Names of the Cloud Foundry applications (optional, defaults to all applications in the space)";
+
+    @Tool(description = APPLICATION_DETAILS_BATCH)
+    public Mono<List<ApplicationDetailResult>> applicationDetailsBatch(
+            @ToolParam(description = NAMES_PARAM, required = false) List<String> applicationNames,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+            ToolContext toolContext) {
+        CfTarget resolved = cfTargets.resolve(target);
+        Flux<String> names = applicationNames == null || applicationNames.isEmpty() ?
+                applications(resolved).flatMapIterable(summaries -> summaries).map(ApplicationSummary::getName) :
+                Flux.fromIterable(applicationNames).distinct();
+
+        AtomicInteger completed = new AtomicInteger();
+        return names
+                .flatMap(name -> applicationDetail(resolved, name)
+                        .map(detail -> ApplicationDetailResult.success(name, detail))
+                        .onErrorResume(e -> Mono.just(ApplicationDetailResult.failure(name, e))), batchConcurrency)
+                // Stream each result to the client as it completes
+                .concatMap(result -> ToolNotifications.send(toolContext, "applicationDetailsBatch",
+                                completed.incrementAndGet() + ": " + result.name() + (result.error() == null ? " OK" : " failed: " + result.error()))
+                        .thenReturn(result))
+                .collectList();
+    }
 
-    private static final String PUSH_APPLICATION = "Push an application JAR file to the Cloud Foundry space.";
+
+    private static final String PUSH_APPLICATION = "Push an application JAR file to the Cloud Foundry space. " +
+            "Files the Cloud Controller already has are not uploaded again, and the app is staged once.";
     private static final String NAME_PARAM = "Name of the Cloud Foundry application";
     private static final String PATH_PARAM = "Fully qualified directory pathname to the compiled JAR file for the application";
     private static final String NO_START_PARAM = "Set this flag to true if you want to explicitly prevent the app from starting after being pushed.";
+    private static final String BUILDPACK_PARAM = "Name of the buildpack to stage the application with (optional, defaults to java_buildpack_offline)";
+    private static final String DEFAULT_BUILDPACK = "java_buildpack_offline";
 
     @Tool(description = PUSH_APPLICATION)
-    public void pushApplication(@ToolParam(description = NAME_PARAM) String applicationName,
-                                @ToolParam(description = PATH_PARAM) String path,
-                                @ToolParam(description = NO_START_PARAM, required = false) Boolean noStart,
-                                @ToolParam(description = MEMORY_PARAM, required = false) Integer memory,
-                                @ToolParam(description = DISK_PARAM, required = false) Integer disk) {
-        PushApplicationRequest request = PushApplicationRequest.builder().
+    public Mono<Void> pushApplication(@ToolParam(description = NAME_PARAM) String applicationName,
+                                      @ToolParam(description = PATH_PARAM) String path,
+                                      @ToolParam(description = NO_START_PARAM, required = false) Boolean noStart,
+                                      @ToolParam(description = MEMORY_PARAM, required = false) Integer memory,
+                                      @ToolParam(description = DISK_PARAM, required = false) Integer disk,
+                                      @ToolParam(description = INSTANCES_PARAM, required = false) Integer instances,
+                                      @ToolParam(description = BUILDPACK_PARAM, required = false) String buildpack,
+                                      @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        return push(cfTargets.resolve(target), applicationName, path, noStart, memory, disk, instances, buildpack, step -> { });
+    }
+
+    /*
+        Pushes through a single manifest so that the environment, scale and buildpack are in place
+        before the only staging. cf-java-client fingerprints the JAR's entries, asks the Cloud
+        Controller which it already has, and uploads only the rest. It compresses those into a temporary
+        zip file first and deletes it after the upload; the upload is not streamed from the JAR.
+     */
+    private Mono<Void> push(CfTarget resolved, String applicationName, String path, Boolean noStart,
+                            Integer memory, Integer disk, Integer instances, String buildpack, Consumer<String> progress) {
+        ApplicationManifest manifest = ApplicationManifest.builder().
                 name(applicationName).
                 path(Paths.get(path)).
-                noStart(true).
-                buildpack("java_buildpack_offline").
+                buildpack(buildpack == null || buildpack.isEmpty() ? DEFAULT_BUILDPACK : buildpack).
                 memory(memory).
-                diskQuota(disk).
+                disk(disk).
+                instances(instances).
+                environmentVariable("JBP_CONFIG_OPEN_JDK_JRE", "{ jre: { version: 17.+ } }").
                 build();
-        cloudFoundryOperations.applications().push(request).block();
-
-        SetEnvironmentVariableApplicationRequest envRequest = SetEnvironmentVariableApplicationRequest.builder().
-                name(applicationName).variableName("JBP_CONFIG_OPEN_JDK_JRE").variableValue("{ jre: { version: 17.+ } }").
+        boolean start = noStart == null || !noStart;
+        PushApplicationManifestRequest request = PushApplicationManifestRequest.builder().
+                manifest(manifest).
+                noStart(!start).
                 build();
-        cloudFoundryOperations.applications().setEnvironmentVariable(envRequest).block();
 
-        if (noStart == null || !noStart) {
-            StartApplicationRequest startApplicationRequest = StartApplicationRequest.builder().
-                    name(applicationName).
-                    build();
-            cloudFoundryOperations.applications().start(startApplicationRequest).block();
-        }
+        return Mono.fromRunnable(() -> progress.accept(start ? "Uploading changed files, staging and starting" : "Uploading changed files"))
+                .then(cfResilience.write(resolved, Endpoint.APPLICATIONS, () -> cfTargets.operations(resolved).applications().pushManifest(request)))
+                .doFinally(signal -> invalidateApplication(resolved, applicationName));
     }
 
     private static final String SCALE_APPLICATION = "Scale the number of instances, memory, or disk size of an application. ";
@@ -86,55 +177,119 @@ public class CfService {
     private static final String DISK_PARAM = "The disk size, in megabytes, of the Cloud Foundry application";
 
     @Tool(description = SCALE_APPLICATION)
-    public void scaleApplication(@ToolParam(description = NAME_PARAM) String applicationName,
-                                 @ToolParam(description = INSTANCES_PARAM, required = false) Integer instances,
-                                 @ToolParam(description = MEMORY_PARAM, required = false) Integer memory,
-                                 @ToolParam(description = DISK_PARAM, required = false) Integer disk) {
+    public Mono<Void> scaleApplication(@ToolParam(description = NAME_PARAM) String applicationName,
+                                       @ToolParam(description = INSTANCES_PARAM, required = false) Integer instances,
+                                       @ToolParam(description = MEMORY_PARAM, required = false) Integer memory,
+                                       @ToolParam(description = DISK_PARAM, required = false) Integer disk,
+                                       @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         ScaleApplicationRequest scaleApplicationRequest = ScaleApplicationRequest.builder().
                 name(applicationName).
                 instances(instances).
                 diskLimit(disk).
                 memoryLimit(memory).
                 build();
-        cloudFoundryOperations.applications().scale(scaleApplicationRequest).block();
+        return cfResilience.write(resolved, Endpoint.APPLICATIONS, () -> cfTargets.operations(resolved).applications().scale(scaleApplicationRequest))
+                .doFinally(signal -> invalidateApplication(resolved, applicationName));
     }
 
     private static final String START_APPLICATION = "Start a Cloud Foundry application";
 
     @Tool(description = START_APPLICATION)
-    public void startApplication(@ToolParam(description = NAME_PARAM) String applicationName) {
+    public Mono<Void> startApplication(@ToolParam(description = NAME_PARAM) String applicationName,
+                                       @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         StartApplicationRequest startApplicationRequest = StartApplicationRequest.builder().
                 name(applicationName).
                 build();
-        cloudFoundryOperations.applications().start(startApplicationRequest).block();
+        return cfResilience.write(resolved, Endpoint.APPLICATIONS, () -> cfTargets.operations(resolved).applications().start(startApplicationRequest))
+                .doFinally(signal -> invalidateApplication(resolved, applicationName));
     }
 
     private static final String STOP_APPLICATION = "Stop a running Cloud Foundry application";
 
     @Tool(description = STOP_APPLICATION)
-    public void stopApplication(@ToolParam(description = NAME_PARAM) String applicationName) {
+    public Mono<Void> stopApplication(@ToolParam(description = NAME_PARAM) String applicationName,
+                                      @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         StopApplicationRequest stopApplicationRequest = StopApplicationRequest.builder().
                 name(applicationName).
                 build();
-        cloudFoundryOperations.applications().stop(stopApplicationRequest).block();
+        return cfResilience.write(resolved, Endpoint.APPLICATIONS, () -> cfTargets.operations(resolved).applications().stop(stopApplicationRequest))
+                .doFinally(signal -> invalidateApplication(resolved, applicationName));
     }
 
     private static final String RESTART_APPLICATION = "Restart a running Cloud Foundry application";
 
     @Tool(description = RESTART_APPLICATION)
-    public void restartApplication(@ToolParam(description = NAME_PARAM) String applicationName) {
+    public Mono<Void> restartApplication(@ToolParam(description = NAME_PARAM) String applicationName,
+                                         @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         RestartApplicationRequest request = RestartApplicationRequest.builder().name(applicationName).build();
-        cloudFoundryOperations.applications().restart(request).block();
+        return cfResilience.write(resolved, Endpoint.APPLICATIONS, () -> cfTargets.operations(resolved).applications().restart(request))
+                .doFinally(signal -> invalidateApplication(resolved, applicationName));
     }
 
     private static final String DELETE_APPLICATION = "Delete a Cloud Foundry application";
 
     @Tool(description = DELETE_APPLICATION)
-    public void deleteApplication(@ToolParam(description = NAME_PARAM) String applicationName) {
+    public Mono<Void> deleteApplication(@ToolParam(description = NAME_PARAM) String applicationName,
+                                        @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         DeleteApplicationRequest deleteApplicationRequest = DeleteApplicationRequest.builder().
                 name(applicationName).
                 build();
-        cloudFoundryOperations.applications().delete(deleteApplicationRequest).block();
+        return cfResilience.write(resolved, Endpoint.APPLICATIONS, () -> cfTargets.operations(resolved).applications().delete(deleteApplicationRequest))
+                .doFinally(signal -> {
+                    invalidateApplication(resolved, applicationName);
+                    // Deleting an app also removes its bindings
+                    cfCache.invalidateAll(Resource.SERVICE_INSTANCES, resolved);
+                    cfCache.invalidateAll(Resource.SERVICE_INSTANCE_DETAILS, resolved);
+                });
+    }
+
+    /*
+        Background jobs
+     */
+    private static final String ASYNC_SUFFIX = " Runs in the background: returns a job id straight away, " +
+            "which jobStatus and jobCancel accept. Progress is sent as notifications.";
+
+    @Tool(description = PUSH_APPLICATION + ASYNC_SUFFIX)
+    public Mono<JobStatus> pushApplicationAsync(@ToolParam(description = NAME_PARAM) String applicationName,
+                                                @ToolParam(description = PATH_PARAM) String path,
+                                                @ToolParam(description = NO_START_PARAM, required = false) Boolean noStart,
+                                                @ToolParam(description = MEMORY_PARAM, required = false) Integer memory,
+                                                @ToolParam(description = DISK_PARAM, required = false) Integer disk,
+                                                @ToolParam(description = INSTANCES_PARAM, required = false) Integer instances,
+                                                @ToolParam(description = BUILDPACK_PARAM, required = false) String buildpack,
+                                                @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+                                                ToolContext toolContext) {
+        CfTarget resolved = cfTargets.resolve(target);
+        return jobService.submit("pushApplication", applicationName, toolContext,
+                progress -> push(resolved, applicationName, path, noStart, memory, disk, instances, buildpack, progress));
+    }
+
+    @Tool(description = RESTART_APPLICATION + "." + ASYNC_SUFFIX)
+    public Mono<JobStatus> restartApplicationAsync(@ToolParam(description = NAME_PARAM) String applicationName,
+                                                   @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+                                                   ToolContext toolContext) {
+        return jobService.submit("restartApplication", applicationName, toolContext, progress -> {
+            progress.accept("Restarting");
+            return restartApplication(applicationName, target);
+        });
+    }
+
+    @Tool(description = SCALE_APPLICATION + ASYNC_SUFFIX)
+    public Mono<JobStatus> scaleApplicationAsync(@ToolParam(description = NAME_PARAM) String applicationName,
+                                                 @ToolParam(description = INSTANCES_PARAM, required = false) Integer instances,
+                                                 @ToolParam(description = MEMORY_PARAM, required = false) Integer memory,
+                                                 @ToolParam(description = DISK_PARAM, required = false) Integer disk,
+                                                 @ToolParam(description = TARGET_PARAM, required = false) CfTarget target,
+                                                 ToolContext toolContext) {
+        return jobService.submit("scaleApplication", applicationName, toolContext, progress -> {
+            progress.accept("Scaling");
+            return scaleApplication(applicationName, instances, memory, disk, target);
+        });
     }
 
     /*
@@ -143,8 +298,16 @@ public class CfService {
     private static final String ORGANIZATION_LIST = "Return the organizations (orgs) in my Cloud Foundry foundation";
 
     @Tool(description = ORGANIZATION_LIST)
-    public List<OrganizationSummary> organizationsList() {
-        return cloudFoundryOperations.organizations().list().collectList().block();
+    public Mono<Object> organizationsList(
+            @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+            @ToolParam(description = OFFSET_PARAM, required = false) Integer offset,
+            @ToolParam(description = LIMIT_PARAM, required = false) Integer limit,
+            @ToolParam(description = FORMAT_PARAM, required = false) String format,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+        return cfCache.get(Resource.ORGANIZATIONS, resolved, ALL,
+                        () -> cfTargets.operations(resolved).organizations().list().collectList())
+                .map(organizations -> resultShaper.shapeList(organizations, fields, offset, limit, format));
     }
 
     /*
@@ -153,35 +316,70 @@ public class CfService {
     private static final String SERVICE_INSTANCE_LIST = "Return the service instances (SIs) in my Cloud Foundry space";
 
     @Tool(description = SERVICE_INSTANCE_LIST)
-    public List<ServiceInstanceSummary> serviceInstancesList() {
-        return cloudFoundryOperations.services().listInstances().collectList().block();
+    public Mono<Object> serviceInstancesList(
+            @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+            @ToolParam(description = OFFSET_PARAM, required = false) Integer offset,
+            @ToolParam(description = LIMIT_PARAM, required = false) Integer limit,
+            @ToolParam(description = FORMAT_PARAM, required = false) String format,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+        return fromIndex(resolved, spaceIndex::serviceInstances).orElseGet(() -> cfCache.get(Resource.SERVICE_INSTANCES, resolved, ALL,
+                        () -> cfTargets.operations(resolved).services().listInstances().collectList()))
+                .map(serviceInstances -> resultShaper.shapeList(serviceInstances, fields, offset, limit, format));
+    }
+
+    private static final String SERVICE_INSTANCE_BINDINGS = "Return the names of the applications bound to a service instance in my Cloud Foundry space";
+
+    @Tool(description = SERVICE_INSTANCE_BINDINGS)
+    public Mono<List<String>> serviceInstanceBindings(@ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
+                                                      @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+        return fromIndex(resolved, () -> spaceIndex.applicationsBoundTo(serviceInstanceName))
+                .orElseGet(() -> serviceInstance(resolved, serviceInstanceName).map(ServiceInstance::getApplications));
     }
 
     private static final String SERVICE_INSTANCE_DETAIL = "Get detailed information about a service instance in my Cloud Foundry space";
 
     @Tool(description = SERVICE_INSTANCE_DETAIL)
-    public ServiceInstance serviceInstanceDetails(@ToolParam(description = NAME_PARAM) String serviceInstanceName) {
+    public Mono<Object> serviceInstanceDetails(@ToolParam(description = NAME_PARAM) String serviceInstanceName,
+                                                 @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+                                                 @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        return serviceInstance(cfTargets.resolve(target), serviceInstanceName).map(serviceInstance -> resultShaper.shape(serviceInstance, fields));
+    }
+
+    private Mono<ServiceInstance> serviceInstance(CfTarget resolved, String serviceInstanceName) {
         GetServiceInstanceRequest request = GetServiceInstanceRequest.builder().name(serviceInstanceName).build();
-        return cloudFoundryOperations.services().getInstance(request).block();
+        return cfCache.get(Resource.SERVICE_INSTANCE_DETAILS, resolved, serviceInstanceName,
+                () -> cfTargets.operations(resolved).services().getInstance(request));
     }
 
     private static final String SERVICE_OFFERINGS_LIST = "Return the service offerings available to me in the Cloud Foundry marketplace";
 
     @Tool(description = SERVICE_OFFERINGS_LIST)
-    public List<ServiceOffering> serviceOfferingsList() {
+    public Mono<Object> serviceOfferingsList(
+            @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+            @ToolParam(description = OFFSET_PARAM, required = false) Integer offset,
+            @ToolParam(description = LIMIT_PARAM, required = false) Integer limit,
+            @ToolParam(description = FORMAT_PARAM, required = false) String format,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         ListServiceOfferingsRequest request = ListServiceOfferingsRequest.builder().build();
-        return cloudFoundryOperations.services().listServiceOfferings(request).collectList().block();
+        return cfCache.get(Resource.SERVICE_OFFERINGS, resolved, ALL,
+                        () -> cfTargets.operations(resolved).services().listServiceOfferings(request).collectList())
+                .map(serviceOfferings -> resultShaper.shapeList(serviceOfferings, fields, offset, limit, format));
     }
 
     private static final String CREATE_SERVICE_INSTANCE = "Create a service instance in the Cloud Foundry space";
 
     @Tool(description = CREATE_SERVICE_INSTANCE)
-    public void createServiceInstance(
+    public Mono<Void> createServiceInstance(
             @ToolParam(description = "Name for the new service instance") String serviceInstanceName,
             @ToolParam(description = "Name of the service offering from the marketplace") String serviceOfferingName,
             @ToolParam(description = "Name of the service plan") String planName,
             @ToolParam(description = "JSON string of configuration parameters (optional)", required = false) String parameters,
-            @ToolParam(description = "List of tags to apply to the service instance (optional)", required = false) List<String> tags) {
+            @ToolParam(description = "List of tags to apply to the service instance (optional)", required = false) List<String> tags,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         
         CreateServiceInstanceRequest.Builder requestBuilder = CreateServiceInstanceRequest.builder()
                 .serviceInstanceName(serviceInstanceName)
@@ -191,7 +389,7 @@ public class CfService {
         if (parameters != null && !parameters.isEmpty()) {
             try {
                 // Convert JSON string to Map
-                Map<String, Object> paramMap = new ObjectMapper().readValue(parameters, new TypeReference<Map<String, Object>>() {});
+                Map<String, Object> paramMap = objectMapper.readValue(parameters, new TypeReference<Map<String, Object>>() {});
                 requestBuilder.parameters(paramMap);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Failed to parse service instance parameters JSON", e);
@@ -202,17 +400,20 @@ public class CfService {
             requestBuilder.tags(tags);
         }
         
-        cloudFoundryOperations.services().createInstance(requestBuilder.build()).block();
+        return cfResilience.write(resolved, Endpoint.SERVICE_INSTANCES, () -> cfTargets.operations(resolved).services().createInstance(requestBuilder.build()))
+                .doFinally(signal -> invalidateServiceInstance(resolved, serviceInstanceName));
     }
 
     private static final String BIND_SERVICE_INSTANCE = "Bind a service instance to a Cloud Foundry application";
     private static final String SI_NAME_PARAM = "Name of the Cloud Foundry service instance";
 
     @Tool(description = BIND_SERVICE_INSTANCE)
-    public void bindServiceInstance(
+    public Mono<Void> bindServiceInstance(
             @ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
             @ToolParam(description = NAME_PARAM) String applicationName,
-            @ToolParam(description = "JSON string of binding parameters (optional)", required = false) String parameters) {
+            @ToolParam(description = "JSON string of binding parameters (optional)", required = false) String parameters,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         
         BindServiceInstanceRequest.Builder requestBuilder = BindServiceInstanceRequest.builder()
                 .serviceInstanceName(serviceInstanceName)
@@ -221,46 +422,55 @@ public class CfService {
         if (parameters != null && !parameters.isEmpty()) {
             try {
                 // Convert JSON string to Map
-                Map<String, Object> paramMap = new ObjectMapper().readValue(parameters, new TypeReference<Map<String, Object>>() {});
+                Map<String, Object> paramMap = objectMapper.readValue(parameters, new TypeReference<Map<String, Object>>() {});
                 requestBuilder.parameters(paramMap);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Failed to parse binding parameters JSON", e);
             }
         }
         
-        cloudFoundryOperations.services().bind(requestBuilder.build()).block();
+        return cfResilience.write(resolved, Endpoint.SERVICE_BINDINGS, () -> cfTargets.operations(resolved).services().bind(requestBuilder.build()))
+                .doFinally(signal -> invalidateServiceInstance(resolved, serviceInstanceName));
     }
 
     private static final String UNBIND_SERVICE_INSTANCE = "Unbind a service instance from a Cloud Foundry application";
 
     @Tool(description = UNBIND_SERVICE_INSTANCE)
-    public void unbindServiceInstance(@ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
-                                      @ToolParam(description = NAME_PARAM) String applicationName) {
+    public Mono<Void> unbindServiceInstance(@ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
+                                            @ToolParam(description = NAME_PARAM) String applicationName,
+                                            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         UnbindServiceInstanceRequest request = UnbindServiceInstanceRequest.builder().
                 serviceInstanceName(serviceInstanceName).
                 applicationName(applicationName).
                 build();
-        cloudFoundryOperations.services().unbind(request).block();
+        return cfResilience.write(resolved, Endpoint.SERVICE_BINDINGS, () -> cfTargets.operations(resolved).services().unbind(request))
+                .doFinally(signal -> invalidateServiceInstance(resolved, serviceInstanceName));
     }
 
     private static final String DELETE_SERVICE_INSTANCE = "Delete a Cloud Foundry service instance";
 
     @Tool(description = DELETE_SERVICE_INSTANCE)
-    public void deleteServiceInstance(@ToolParam(description = SI_NAME_PARAM) String serviceInstanceName) {
+    public Mono<Void> deleteServiceInstance(@ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
+                                            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         DeleteServiceInstanceRequest request = DeleteServiceInstanceRequest.builder().
                 name(serviceInstanceName).
                 build();
-        cloudFoundryOperations.services().deleteInstance(request).block();
+        return cfResilience.write(resolved, Endpoint.SERVICE_INSTANCES, () -> cfTargets.operations(resolved).services().deleteInstance(request))
+                .doFinally(signal -> invalidateServiceInstance(resolved, serviceInstanceName));
     }
 
     private static final String CREATE_SERVICE_KEY = "Create a service key for a Cloud Foundry service instance";
     private static final String SERVICE_KEY_NAME_PARAM = "Name of the service key";
 
     @Tool(description = CREATE_SERVICE_KEY)
-    public void createServiceKey(
+    public Mono<Void> createServiceKey(
             @ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
             @ToolParam(description = SERVICE_KEY_NAME_PARAM) String serviceKeyName,
-            @ToolParam(description = "JSON string of parameters for the service key (optional)", required = false) String parameters) {
+            @ToolParam(description = "JSON string of parameters for the service key (optional)", required = false) String parameters,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         
         CreateServiceKeyRequest.Builder requestBuilder = CreateServiceKeyRequest.builder()
                 .serviceInstanceName(serviceInstanceName)
@@ -269,57 +479,71 @@ public class CfService {
         if (parameters != null && !parameters.isEmpty()) {
             try {
                 // Convert JSON string to Map
-                Map<String, Object> paramMap = new ObjectMapper().readValue(parameters, new TypeReference<Map<String, Object>>() {});
+                Map<String, Object> paramMap = objectMapper.readValue(parameters, new TypeReference<Map<String, Object>>() {});
                 requestBuilder.parameters(paramMap);
             } catch (JsonProcessingException e) {
                 throw new RuntimeException("Failed to parse service key parameters JSON", e);
             }
         }
         
-        cloudFoundryOperations.services().createServiceKey(requestBuilder.build()).block();
+        return cfResilience.write(resolved, Endpoint.SERVICE_KEYS, () -> cfTargets.operations(resolved).services().createServiceKey(requestBuilder.build()))
+                .doFinally(signal -> refreshIndex(resolved, SpaceIndex.Slice.SERVICE_KEYS));
     }
 
     private static final String LIST_SERVICE_KEYS = "List all service keys for a Cloud Foundry service instance";
 
     @Tool(description = LIST_SERVICE_KEYS)
-    public List<ServiceKey> listServiceKeys(
-            @ToolParam(description = SI_NAME_PARAM) String serviceInstanceName) {
-        
+    public Mono<Object> listServiceKeys(
+            @ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
+            @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+            @ToolParam(description = OFFSET_PARAM, required = false) Integer offset,
+            @ToolParam(description = LIMIT_PARAM, required = false) Integer limit,
+            @ToolParam(description = FORMAT_PARAM, required = false) String format,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         ListServiceKeysRequest request = ListServiceKeysRequest.builder()
                 .serviceInstanceName(serviceInstanceName)
                 .build();
                 
-        return cloudFoundryOperations.services().listServiceKeys(request).collectList().block();
+        return fromIndex(resolved, () -> spaceIndex.serviceKeys(serviceInstanceName))
+                .orElseGet(() -> cfResilience.read(resolved, Endpoint.SERVICE_KEYS,
+                        () -> cfTargets.operations(resolved).services().listServiceKeys(request).collectList()))
+                .map(serviceKeys -> resultShaper.shapeList(serviceKeys, fields, offset, limit, format));
     }
 
     private static final String GET_SERVICE_KEY = "Get details of a specific service key";
 
     @Tool(description = GET_SERVICE_KEY)
-    public ServiceKey getServiceKey(
+    public Mono<ServiceKey> getServiceKey(
             @ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
-            @ToolParam(description = SERVICE_KEY_NAME_PARAM) String serviceKeyName) {
-        
+            @ToolParam(description = SERVICE_KEY_NAME_PARAM) String serviceKeyName,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+
         GetServiceKeyRequest request = GetServiceKeyRequest.builder()
                 .serviceInstanceName(serviceInstanceName)
                 .serviceKeyName(serviceKeyName)
                 .build();
                 
-        return cloudFoundryOperations.services().getServiceKey(request).block();
+        return cfResilience.read(resolved, Endpoint.SERVICE_KEYS, () -> cfTargets.operations(resolved).services().getServiceKey(request));
     }
 
     private static final String DELETE_SERVICE_KEY = "Delete a service key from a Cloud Foundry service instance";
 
     @Tool(description = DELETE_SERVICE_KEY)
-    public void deleteServiceKey(
+    public Mono<Void> deleteServiceKey(
             @ToolParam(description = SI_NAME_PARAM) String serviceInstanceName,
-            @ToolParam(description = SERVICE_KEY_NAME_PARAM) String serviceKeyName) {
-        
+            @ToolParam(description = SERVICE_KEY_NAME_PARAM) String serviceKeyName,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+
         DeleteServiceKeyRequest request = DeleteServiceKeyRequest.builder()
                 .serviceInstanceName(serviceInstanceName)
                 .serviceKeyName(serviceKeyName)
                 .build();
                 
-        cloudFoundryOperations.services().deleteServiceKey(request).block();
+        return cfResilience.write(resolved, Endpoint.SERVICE_KEYS, () -> cfTargets.operations(resolved).services().deleteServiceKey(request))
+                .doFinally(signal -> refreshIndex(resolved, SpaceIndex.Slice.SERVICE_KEYS));
     }
 
     /*
@@ -328,16 +552,84 @@ public class CfService {
     private static final String SPACE_LIST = "Returns the spaces in my Cloud Foundry organization (org)";
 
     @Tool(description = SPACE_LIST)
-    public List<SpaceSummary> spacesList() {
-        return cloudFoundryOperations.spaces().list().collectList().block();
+    public Mono<Object> spacesList(
+            @ToolParam(description = FIELDS_PARAM, required = false) List<String> fields,
+            @ToolParam(description = OFFSET_PARAM, required = false) Integer offset,
+            @ToolParam(description = LIMIT_PARAM, required = false) Integer limit,
+            @ToolParam(description = FORMAT_PARAM, required = false) String format,
+            @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
+        return cfCache.get(Resource.SPACES, resolved, ALL,
+                        () -> cfTargets.operations(resolved).spaces().list().collectList())
+                .map(spaces -> resultShaper.shapeList(spaces, fields, offset, limit, format));
     }
 
     private static final String GET_SPACE_QUOTA = "Returns a quota (set of resource limits) scoped to a Cloud Foundry space";
     private static final String SPACE_QUOTA_NAME_PARAM = "Name of the Cloud Foundry space quota";
 
     @Tool(description = GET_SPACE_QUOTA)
-    public SpaceQuota getSpaceQuota(@ToolParam(description = SPACE_QUOTA_NAME_PARAM) String spaceName) {
+    public Mono<SpaceQuota> getSpaceQuota(@ToolParam(description = SPACE_QUOTA_NAME_PARAM) String spaceName,
+                                          @ToolParam(description = TARGET_PARAM, required = false) CfTarget target) {
+        CfTarget resolved = cfTargets.resolve(target);
         GetSpaceQuotaRequest request = GetSpaceQuotaRequest.builder().name(spaceName).build();
-        return cloudFoundryOperations.spaceAdmin().get(request).block();
+        return cfResilience.read(resolved, Endpoint.SPACE_QUOTAS, () -> cfTargets.operations(resolved).spaceAdmin().get(request));
+    }
+
+    /*
+        Space index
+     */
+    private static final String APPLICATION_RELATIONSHIPS = "Return the service instances bound to, the routes mapped to, " +
+            "and the processes of a Cloud Foundry application, answered from the space index";
+
+    @Tool(description = APPLICATION_RELATIONSHIPS)
+    public Mono<ApplicationRelationships> applicationRelationships(@ToolParam(description = NAME_PARAM) String applicationName) {
+        return Mono.justOrEmpty(spaceIndex.relationships(applicationName))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException(!spaceIndex.status().ready() ?
+                        "The space index is not ready yet" : spaceIndex.catchingUp() ?
+                        "The space index is catching up with a recent change, try again shortly" :
+                        "Application " + applicationName + " does not exist")));
+    }
+
+    private static final String SPACE_INDEX_RESYNC = "Rebuild the in-memory index of my Cloud Foundry space from scratch and return its status";
+
+    @Tool(description = SPACE_INDEX_RESYNC)
+    public Mono<SpaceIndexStatus> spaceIndexResync() {
+        return spaceIndex.resync();
+    }
+
+    /*
+        The space index only covers the default target
+     */
+    private <T> Optional<Mono<T>> fromIndex(CfTarget resolved, Supplier<Optional<T>> lookup) {
+        return cfTargets.isDefault(resolved) ? lookup.get().map(Mono::just) : Optional.empty();
+    }
+
+    private void refreshIndex(CfTarget resolved, SpaceIndex.Slice... slices) {
+        if (cfTargets.isDefault(resolved)) {
+            spaceIndex.refresh(slices);
+        }
+    }
+
+    /*
+        Cache invalidation
+     */
+    private void invalidateApplication(CfTarget resolved, String applicationName) {
+        cfCache.invalidateAll(Resource.APPLICATIONS, resolved);
+        cfCache.invalidate(Resource.APPLICATION_DETAILS, resolved, applicationName);
+        cfCache.invalidateAll(Resource.APPLICATION_STATISTICS, resolved);
+        refreshIndex(resolved, SpaceIndex.Slice.APPLICATIONS, SpaceIndex.Slice.PROCESSES, SpaceIndex.Slice.ROUTES);
+    }
+
+    void invalidateApplications(CfTarget resolved) {
+        cfCache.invalidateAll(Resource.APPLICATIONS, resolved);
+        cfCache.invalidateAll(Resource.APPLICATION_DETAILS, resolved);
+        cfCache.invalidateAll(Resource.APPLICATION_STATISTICS, resolved);
+        refreshIndex(resolved, SpaceIndex.Slice.APPLICATIONS, SpaceIndex.Slice.PROCESSES, SpaceIndex.Slice.ROUTES);
+    }
+
+    private void invalidateServiceInstance(CfTarget resolved, String serviceInstanceName) {
+        cfCache.invalidateAll(Resource.SERVICE_INSTANCES, resolved);
+        cfCache.invalidate(Resource.SERVICE_INSTANCE_DETAILS, resolved, serviceInstanceName);
+        refreshIndex(resolved, SpaceIndex.Slice.SERVICE_INSTANCES, SpaceIndex.Slice.SERVICE_KEYS);
     }
 }
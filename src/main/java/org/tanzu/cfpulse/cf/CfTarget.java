@@ -0,0 +1,12 @@
+package org.tanzu.cfpulse.cf;
+
+import org.springframework.ai.tool.annotation.ToolParam;
+
+public record CfTarget(
+        @ToolParam(description = "Name of the configured Cloud Foundry foundation (optional, defaults to the default foundation)", required = false)
+        String foundation,
+        @ToolParam(description = "Name of the Cloud Foundry organization (optional, defaults to the foundation's organization)", required = false)
+        String organization,
+        @ToolParam(description = "Name of the Cloud Foundry space (optional, defaults to the foundation's space)", required = false)
+        String space) {
+}
@@ -0,0 +1,146 @@
+package org.tanzu.cfpulse.cf;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.cloudfoundry.client.CloudFoundryClient;
+import org.cloudfoundry.doppler.DopplerClient;
+import org.cloudfoundry.operations.DefaultCloudFoundryOperations;
+import org.cloudfoundry.reactor.DefaultConnectionContext;
+import org.cloudfoundry.reactor.client.ReactorCloudFoundryClient;
+import org.cloudfoundry.reactor.doppler.ReactorDopplerClient;
+import org.cloudfoundry.reactor.uaa.ReactorUaaClient;
+import org.cloudfoundry.uaa.UaaClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/*
+    Registry of the foundations, organizations and spaces the tools can target. The default foundation
+    is configured with cf.apiHost, cf.username, cf.password, cf.organization and cf.space (plus
+    cf.grant-type, cf.client-id and cf.client-secret for service accounts); further foundations go
+    under cf.foundations.<name>.* with the same keys. Every foundation gets one connection
+    context (and so one Netty connection pool), one token provider and one set of clients, created on
+    first use. The operations for each org/space are built lazily on top of those clients and evicted
+    after cf.targets.idle-timeout without use, keeping at most cf.targets.maximum-size of them.
+ */
+@Component
+public class CfTargets {
+
+    private static final Logger logger = LoggerFactory.getLogger(CfTargets.class);
+
+    static final String DEFAULT_FOUNDATION = "default";
+
+    record FoundationProperties(String apiHost, String username, String password, String organization, String space,
+                                @DefaultValue("password") String grantType, String clientId, String clientSecret) {
+    }
+
+    private record Foundation(DefaultConnectionContext connectionContext, RefreshingTokenProvider tokenProvider,
+                              CloudFoundryClient cloudFoundryClient,
+                              DopplerClient dopplerClient, UaaClient uaaClient) {
+    }
+
+    private final Map<String, FoundationProperties> foundationProperties = new HashMap<>();
+    private final Map<String, Foundation> foundations = new ConcurrentHashMap<>();
+    private final Cache<CfTarget, DefaultCloudFoundryOperations> operations;
+    private final CfTarget defaultTarget;
+    private final DefaultCloudFoundryOperations defaultOperations;
+    private final CfConnectionProperties connectionProperties;
+    private final CfResilience cfResilience;
+    private final Duration refreshAhead;
+
+    public CfTargets(Environment environment, MeterRegistry meterRegistry, CfConnectionProperties connectionProperties,
+                     CfResilience cfResilience, FoundationProperties defaultFoundation, DefaultConnectionContext connectionContext,
+                     RefreshingTokenProvider tokenProvider,
+                     CloudFoundryClient cloudFoundryClient, DopplerClient dopplerClient, UaaClient uaaClient,
+                     DefaultCloudFoundryOperations defaultOperations) {
+        this.foundationProperties.put(DEFAULT_FOUNDATION, defaultFoundation);
+        this.foundationProperties.putAll(Binder.get(environment)
+                .bind("cf.foundations", Bindable.mapOf(String.class, FoundationProperties.class))
+                .orElse(Map.of()));
+        // The default foundation reuses the application's clients rather than opening a second pool
+        this.foundations.put(DEFAULT_FOUNDATION, new Foundation(connectionContext, tokenProvider, cloudFoundryClient, dopplerClient, uaaClient));
+
+        this.defaultTarget = new CfTarget(DEFAULT_FOUNDATION, defaultFoundation.organization(), defaultFoundation.space());
+        this.defaultOperations = defaultOperations;
+        this.connectionProperties = connectionProperties;
+        this.cfResilience = cfResilience;
+        this.refreshAhead = environment.getProperty("cf.token.refresh-ahead", Duration.class, Duration.ofMinutes(2));
+        this.operations = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .expireAfterAccess(environment.getProperty("cf.targets.idle-timeout", Duration.class, Duration.ofMinutes(30)))
+                .maximumSize(environment.getProperty("cf.targets.maximum-size", Long.class, 64L))
+                .recordStats()
+                .build(), "cf.targets");
+    }
+
+    /*
+        Fills in the parts of a target left out by the caller. An organization defaults to the
+        foundation's organization; a space only defaults when the organization did as well.
+     */
+    CfTarget resolve(CfTarget target) {
+        String foundation = target != null && hasText(target.foundation()) ? target.foundation() : DEFAULT_FOUNDATION;
+        FoundationProperties properties = foundationProperties.get(foundation);
+        if (properties == null) {
+            throw new IllegalArgumentException("Unknown Cloud Foundry foundation " + foundation +
+                    "; the configured foundations are " + foundationProperties.keySet());
+        }
+        if (target == null || !hasText(target.organization())) {
+            return new CfTarget(foundation, properties.organization(),
+                    target != null && hasText(target.space()) ? target.space() : properties.space());
+        }
+        return new CfTarget(foundation, target.organization(), hasText(target.space()) ? target.space() : null);
+    }
+
+    boolean isDefault(CfTarget resolved) {
+        return defaultTarget.equals(resolved);
+    }
+
+    DefaultCloudFoundryOperations operations(CfTarget target) {
+        CfTarget resolved = resolve(target);
+        if (isDefault(resolved)) {
+            return defaultOperations;
+        }
+        return operations.get(resolved, key -> {
+            Foundation foundation = foundations.computeIfAbsent(key.foundation(), this::connect);
+            logger.info("Targeting organization {} and space {} on foundation {}", key.organization(), key.space(), key.foundation());
+            return CfConfiguration.newOperations(foundation.cloudFoundryClient(), foundation.dopplerClient(),
+                    foundation.uaaClient(), key.organization(), key.space());
+        });
+    }
+
+    private Foundation connect(String name) {
+        FoundationProperties properties = foundationProperties.get(name);
+        logger.info("Connecting to foundation {} at {}", name, properties.apiHost());
+        DefaultConnectionContext connectionContext = CfConfiguration.newConnectionContext(properties.apiHost(), connectionProperties,
+                cfResilience.rateLimit(name));
+        RefreshingTokenProvider tokenProvider = CfConfiguration.newTokenProvider(properties, refreshAhead);
+        return new Foundation(connectionContext, tokenProvider,
+                ReactorCloudFoundryClient.builder().connectionContext(connectionContext).tokenProvider(tokenProvider).build(),
+                ReactorDopplerClient.builder().connectionContext(connectionContext).tokenProvider(tokenProvider).build(),
+                ReactorUaaClient.builder().connectionContext(connectionContext).tokenProvider(tokenProvider).build());
+    }
+
+    @PreDestroy
+    void close() {
+        // The default foundation's connection context and token provider are beans closed by the container
+        foundations.forEach((name, foundation) -> {
+            if (!DEFAULT_FOUNDATION.equals(name)) {
+                foundation.tokenProvider().close();
+                foundation.connectionContext().dispose();
+            }
+        });
+    }
+}
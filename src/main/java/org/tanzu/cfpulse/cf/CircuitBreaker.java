@@ -0,0 +1,74 @@
+package org.tanzu.cfpulse.cf;
+
+import java.time.Duration;
+
+/*
+    Stops calling an endpoint that keeps failing. After failureThreshold failures in a row the breaker
+    opens and calls fail at once for openDuration. Then one trial call is let through: if it succeeds
+    the breaker closes, otherwise it opens again. Only failures that say something about the endpoint
+    (5xx, 429, timeouts, broken connections) count; a 404 is a healthy answer.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntilMillis;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = openDuration;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntilMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        } else if (trialInFlight) {
+            return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openUntilMillis = System.currentTimeMillis() + openDuration.toMillis();
+        }
+    }
+
+    /*
+        A call that was cancelled, or never got to the endpoint, says nothing about it, but must not hold
+        on to the trial
+     */
+    synchronized void onCancel() {
+        trialInFlight = false;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    synchronized long secondsUntilTrial() {
+        return Math.max(0, (openUntilMillis - System.currentTimeMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,62 @@
+package org.tanzu.cfpulse.cf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tanzu.cfpulse.ToolMetrics;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/*
+    Instruments the reactor-netty client shared by the Cloud Foundry, UAA and Doppler clients. Request
+    latencies are recorded per endpoint under reactor.netty.http.client.*, with GUIDs in the path folded
+    into {id} so that every application does not get its own meter. Requests made by a tool call carry
+    the call's trace id, with a span id of their own, as a W3C traceparent header and in the debug log.
+    The rate limit headers of every response are passed on to the foundation's RateLimit.
+ */
+final class HttpClientInstrumentation {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientInstrumentation.class);
+
+    private static final Pattern GUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private HttpClientInstrumentation() {
+    }
+
+    static HttpClient instrument(HttpClient httpClient, RateLimit rateLimit) {
+        return httpClient
+                .metrics(true, HttpClientInstrumentation::uriTag)
+                .doOnRequest((request, connection) -> traceRequest(request))
+                .doOnResponse((response, connection) -> {
+                    rateLimit.update(response.responseHeaders(), response.status().code());
+                    logger.debug("{} {} -> {} [traceId={}]", response.method(), response.uri(), response.status().code(),
+                            response.currentContextView().getOrDefault(ToolMetrics.TRACE_ID, "-"));
+                });
+    }
+
+    private static void traceRequest(HttpClientRequest request) {
+        String traceId = request.currentContextView().getOrDefault(ToolMetrics.TRACE_ID, null);
+        if (traceId != null) {
+            request.header("traceparent", "00-" + traceId + "-" + HexFormat.of().toHexDigits(spanId()) + "-01");
+        }
+        logger.debug("{} {} [traceId={}]", request.method(), request.uri(), traceId == null ? "-" : traceId);
+    }
+
+    // Random and never all zeros, which W3C Trace Context reserves as invalid
+    private static long spanId() {
+        long spanId;
+        do {
+            spanId = ThreadLocalRandom.current().nextLong();
+        } while (spanId == 0);
+        return spanId;
+    }
+
+    static String uriTag(String uri) {
+        int query = uri.indexOf('?');
+        String path = query < 0 ? uri : uri.substring(0, query);
+        return GUID.matcher(path).replaceAll("{id}");
+    }
+}
@@ -0,0 +1,232 @@
+package org.tanzu.cfpulse.cf;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.tanzu.cfpulse.ToolMetrics;
+import org.tanzu.cfpulse.ToolNotifications;
+import org.tanzu.cfpulse.cf.JobStatus.State;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+    Runs long Cloud Foundry operations in the background and hands back a job id straight away. At
+    most cf.jobs.max-running jobs run at once; up to cf.jobs.max-queued more wait for a slot, in the
+    order they were submitted, and further submissions are refused. A job still running after
+    cf.jobs.timeout fails and gives up its slot. Progress is reported through the job's status and
+    as notifications to the client that submitted it. Finished jobs are kept for cf.jobs.retention,
+    up to cf.jobs.max-finished of them. A job runs in the Reactor context of the tool call that submitted
+    it, so its Cloud Controller requests carry that call's trace id.
+ */
+@Service
+public class JobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobService.class);
+
+    private static final class RunningJob {
+        private final String id = UUID.randomUUID().toString();
+        private final String operation;
+        private final String subject;
+        private final ToolContext toolContext;
+        private final Function<Consumer<String>, Mono<?>> work;
+        // The Reactor context of the tool call that submitted the job, with its trace id
+        private final ContextView context;
+        private final Instant submittedAt = Instant.now();
+        private final AtomicBoolean done = new AtomicBoolean();
+        // Set under the service's lock once the job holds a slot
+        private volatile boolean started;
+        private volatile String progress = "Submitted";
+        private volatile Disposable subscription = Disposables.disposed();
+
+        private RunningJob(String operation, String subject, ToolContext toolContext, Function<Consumer<String>, Mono<?>> work,
+                           ContextView context) {
+            this.operation = operation;
+            this.subject = subject;
+            this.toolContext = toolContext;
+            this.work = work;
+            this.context = context;
+        }
+
+        private JobStatus status() {
+            return status(started ? State.RUNNING : State.QUEUED, null, null);
+        }
+
+        private JobStatus status(State state, Instant finishedAt, String error) {
+            return new JobStatus(id, operation, subject, state, progress, submittedAt, finishedAt, error);
+        }
+    }
+
+    // Jobs that have not finished yet, whether they hold a slot or are queued
+    private final Map<String, RunningJob> running = new ConcurrentHashMap<>();
+    private final Cache<String, JobStatus> finished;
+    // Guarded by this
+    private final Queue<RunningJob> queued = new ArrayDeque<>();
+    private int active;
+    private final int maxRunning;
+    private final int maxQueued;
+    private final Duration timeout;
+
+    public JobService(MeterRegistry meterRegistry,
+                      @Value("${cf.jobs.max-running:16}") int maxRunning,
+                      @Value("${cf.jobs.max-queued:64}") int maxQueued,
+                      @Value("${cf.jobs.timeout:PT30M}") Duration timeout,
+                      @Value("${cf.jobs.max-finished:200}") long maxFinished,
+                      @Value("${cf.jobs.retention:PT1H}") Duration retention) {
+        this.maxRunning = maxRunning;
+        this.maxQueued = maxQueued;
+        this.timeout = timeout;
+        this.finished = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .expireAfterWrite(retention)
+                .maximumSize(maxFinished)
+                .recordStats()
+                .build(), "cf.jobs.finished");
+        Gauge.builder("cf.jobs.running", running, Map::size)
+                .description("Background Cloud Foundry jobs in progress")
+                .register(meterRegistry);
+    }
+
+    /*
+        Starts the work, or queues it when every slot is taken, and returns its status without
+        waiting. The work is given a callback to report progress with.
+     */
+    Mono<JobStatus> submit(String operation, String subject, ToolContext toolContext,
+                           Function<Consumer<String>, Mono<?>> work) {
+        return Mono.deferContextual(context -> Mono.fromCallable(() -> {
+            RunningJob job = new RunningJob(operation, subject, toolContext, work, context);
+            synchronized (this) {
+                if (active < maxRunning) {
+                    active++;
+                    job.started = true;
+                } else if (queued.size() < maxQueued) {
+                    queued.add(job);
+                } else {
+                    throw new IllegalStateException("There are already " + maxRunning + " jobs running and " + maxQueued +
+                            " waiting; try again once one has finished");
+                }
+                running.put(job.id, job);
+            }
+            if (job.started) {
+                start(job);
+            } else {
+                logger.info("Queued job {}: {} {}", job.id, operation, subject);
+            }
+            return job.status();
+        }));
+    }
+
+    private void start(RunningJob job) {
+        Consumer<String> progress = message -> {
+            job.progress = message;
+            notify(job, message);
+        };
+        job.subscription = Mono.defer(() -> job.work.apply(progress))
+                .timeout(timeout, Mono.error(() -> new TimeoutException("Gave up after " + timeout)))
+                .contextWrite(job.context)
+                .subscribe(null,
+                        e -> finish(job, State.FAILED, String.valueOf(e.getMessage())),
+                        () -> finish(job, State.SUCCEEDED, null));
+        // Cancelled between taking its slot and subscribing
+        if (job.done.get()) {
+            job.subscription.dispose();
+        }
+        logger.info("Started job {}: {} {} [traceId={}]", job.id, job.operation, job.subject,
+                job.context.getOrDefault(ToolMetrics.TRACE_ID, "-"));
+    }
+
+    private static final String JOB_ID_PARAM = "Id of the job, as returned when it was started";
+    private static final String JOB_STATUS = "Return the state and progress of a background Cloud Foundry job";
+
+    @Tool(description = JOB_STATUS)
+    public Mono<JobStatus> jobStatus(@ToolParam(description = JOB_ID_PARAM) String jobId) {
+        return Mono.fromCallable(() -> {
+            RunningJob job = running.get(jobId);
+            return job != null ? job.status() : finishedJob(jobId);
+        });
+    }
+
+    private static final String JOB_CANCEL = "Cancel a background Cloud Foundry job. The server stops following the operation; " +
+            "work the Cloud Controller has already accepted, such as staging, may still complete.";
+
+    @Tool(description = JOB_CANCEL)
+    public Mono<JobStatus> jobCancel(@ToolParam(description = JOB_ID_PARAM) String jobId) {
+        return Mono.fromCallable(() -> {
+            RunningJob job = running.get(jobId);
+            if (job == null) {
+                return finishedJob(jobId);
+            }
+            job.subscription.dispose();
+            finish(job, State.CANCELLED, null);
+            return finishedJob(jobId);
+        });
+    }
+
+    private JobStatus finishedJob(String jobId) {
+        JobStatus status = finished.getIfPresent(jobId);
+        if (status == null) {
+            throw new IllegalArgumentException("Unknown job " + jobId + "; finished jobs are kept for a limited time");
+        }
+        return status;
+    }
+
+    private void finish(RunningJob job, State state, String error) {
+        // A job that is cancelled while it completes must only be finished once
+        if (!job.done.compareAndSet(false, true)) {
+            return;
+        }
+        // Recorded as finished before it stops being running, so a status lookup always finds it
+        finished.put(job.id, job.status(state, Instant.now(), error));
+        running.remove(job.id);
+        RunningJob next = null;
+        synchronized (this) {
+            if (!queued.remove(job) && job.started) {
+                next = queued.poll();
+                if (next != null) {
+                    next.started = true;
+                } else {
+                    active--;
+                }
+            }
+        }
+        if (next != null) {
+            start(next);
+        }
+        logger.info("Job {} {}", job.id, state);
+        notify(job, state + (error == null ? "" : ": " + error));
+    }
+
+    private static void notify(RunningJob job, String message) {
+        ToolNotifications.send(job.toolContext, job.operation, "Job " + job.id + " (" + job.subject + "): " + message).subscribe();
+    }
+
+    @PreDestroy
+    void close() {
+        synchronized (this) {
+            queued.clear();
+        }
+        running.values().forEach(job -> job.subscription.dispose());
+    }
+}
@@ -0,0 +1,11 @@
+package org.tanzu.cfpulse.cf;
+
+import java.time.Instant;
+
+public record JobStatus(String id, String operation, String subject, State state, String progress,
+                        Instant submittedAt, Instant finishedAt, String error) {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+}
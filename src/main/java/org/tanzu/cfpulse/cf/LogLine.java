@@ -0,0 +1,21 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.doppler.LogMessage;
+
+import java.time.Instant;
+
+public record LogLine(Instant timestamp, String sourceType, String sourceInstance, String messageType, String message) {
+
+    static LogLine from(LogMessage logMessage) {
+        return new LogLine(Instant.ofEpochSecond(0, logMessage.getTimestamp()),
+                logMessage.getSourceType(),
+                logMessage.getSourceInstance(),
+                String.valueOf(logMessage.getMessageType()),
+                logMessage.getMessage());
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + " [" + sourceType + "/" + sourceInstance + "] " + messageType + " " + message;
+    }
+}
@@ -0,0 +1,40 @@
+package org.tanzu.cfpulse.cf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Keeps the most recent log lines of a tail or a recent logs request in a fixed-size array. Once full,
+    each new line overwrites the oldest one, so the memory held per call never grows with the volume an
+    application logs.
+ */
+class LogRingBuffer {
+
+    private final LogLine[] lines;
+    private long written;
+
+    LogRingBuffer(int capacity) {
+        this.lines = new LogLine[Math.max(1, capacity)];
+    }
+
+    synchronized void add(LogLine line) {
+        lines[(int) (written++ % lines.length)] = line;
+    }
+
+    synchronized List<LogLine> snapshot() {
+        int size = (int) Math.min(written, lines.length);
+        List<LogLine> snapshot = new ArrayList<>(size);
+        for (long i = written - size; i < written; i++) {
+            snapshot.add(lines[(int) (i % lines.length)]);
+        }
+        return snapshot;
+    }
+
+    synchronized long written() {
+        return written;
+    }
+
+    synchronized long overwritten() {
+        return Math.max(0, written - lines.length);
+    }
+}
@@ -0,0 +1,6 @@
+package org.tanzu.cfpulse.cf;
+
+import java.util.List;
+
+public record LogTail(List<LogLine> lines, long linesReceived, long linesOverwritten, long notificationsDropped) {
+}
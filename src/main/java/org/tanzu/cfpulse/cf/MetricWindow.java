@@ -0,0 +1,201 @@
+package org.tanzu.cfpulse.cf;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/*
+    Rolling window of the request and container metrics of one application. The window is split into
+    fixed-length slots kept in preallocated primitive arrays; a slot is cleared and reused once the window
+    has moved past it, so recording never allocates and the memory held per application is fixed by the
+    window length and resolution. Request latencies go into log-linear histogram buckets, eight per power
+    of two, which bounds the error of a percentile at 12.5%.
+ */
+class MetricWindow {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 32;
+    private static final long MAX_LATENCY_MICROS = (1L << MAX_EXPONENT) - 1;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long resolutionMillis;
+    private final int slots;
+
+    private final long[] slotEpoch;
+    private final long[] requests;
+    private final long[] serverErrors;
+    private final long[] clientErrors;
+    private final long[] maxLatency;
+    private final long[] latencyBuckets;
+    private final long[] containerSamples;
+    private final double[] cpuSum;
+    private final double[] cpuMax;
+    private final long[] memorySum;
+    private final long[] memoryMax;
+    private final long[] diskMax;
+    private final long[] merged = new long[BUCKETS];
+
+    MetricWindow(Duration window, Duration resolution) {
+        this.resolutionMillis = Math.max(1, resolution.toMillis());
+        this.slots = (int) Math.max(1, (window.toMillis() + resolutionMillis - 1) / resolutionMillis);
+        this.slotEpoch = new long[slots];
+        Arrays.fill(slotEpoch, -1);
+        this.requests = new long[slots];
+        this.serverErrors = new long[slots];
+        this.clientErrors = new long[slots];
+        this.maxLatency = new long[slots];
+        this.latencyBuckets = new long[slots * BUCKETS];
+        this.containerSamples = new long[slots];
+        this.cpuSum = new double[slots];
+        this.cpuMax = new double[slots];
+        this.memorySum = new long[slots];
+        this.memoryMax = new long[slots];
+        this.diskMax = new long[slots];
+    }
+
+    synchronized void recordRequest(long timestampMillis, long latencyMicros, int statusCode) {
+        int slot = slot(timestampMillis);
+        if (slot < 0) {
+            return;
+        }
+        long latency = Math.min(Math.max(latencyMicros, 0), MAX_LATENCY_MICROS);
+        requests[slot]++;
+        if (statusCode >= 500) {
+            serverErrors[slot]++;
+        } else if (statusCode >= 400) {
+            clientErrors[slot]++;
+        }
+        maxLatency[slot] = Math.max(maxLatency[slot], latency);
+        latencyBuckets[slot * BUCKETS + bucket(latency)]++;
+    }
+
+    synchronized void recordContainer(long timestampMillis, double cpuPercent, long memoryBytes, long diskBytes) {
+        int slot = slot(timestampMillis);
+        if (slot < 0) {
+            return;
+        }
+        containerSamples[slot]++;
+        cpuSum[slot] += cpuPercent;
+        cpuMax[slot] = Math.max(cpuMax[slot], cpuPercent);
+        memorySum[slot] += memoryBytes;
+        memoryMax[slot] = Math.max(memoryMax[slot], memoryBytes);
+        diskMax[slot] = Math.max(diskMax[slot], diskBytes);
+    }
+
+    /*
+        Sums the slots that fall within the last span of the window, up to nowMillis
+     */
+    synchronized ApplicationMetrics snapshot(String name, long trackedSinceMillis, long nowMillis, Duration span) {
+        long nowEpoch = nowMillis / resolutionMillis;
+        int spanSlots = (int) Math.min(slots, Math.max(1, (span.toMillis() + resolutionMillis - 1) / resolutionMillis));
+        long oldestEpoch = nowEpoch - spanSlots;
+
+        long requestCount = 0, serverErrorCount = 0, clientErrorCount = 0, maxLatencyMicros = 0;
+        long samples = 0, memoryTotal = 0, memoryPeak = 0, diskPeak = 0;
+        double cpuTotal = 0, cpuPeak = 0;
+        Arrays.fill(merged, 0);
+        for (int slot = 0; slot < slots; slot++) {
+            if (slotEpoch[slot] <= oldestEpoch || slotEpoch[slot] > nowEpoch) {
+                continue;
+            }
+            requestCount += requests[slot];
+            serverErrorCount += serverErrors[slot];
+            clientErrorCount += clientErrors[slot];
+            maxLatencyMicros = Math.max(maxLatencyMicros, maxLatency[slot]);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                merged[bucket] += latencyBuckets[slot * BUCKETS + bucket];
+            }
+            samples += containerSamples[slot];
+            cpuTotal += cpuSum[slot];
+            cpuPeak = Math.max(cpuPeak, cpuMax[slot]);
+            memoryTotal += memorySum[slot];
+            memoryPeak = Math.max(memoryPeak, memoryMax[slot]);
+            diskPeak = Math.max(diskPeak, diskMax[slot]);
+        }
+
+        // A window that started after the span began only covers the time since tracking started
+        long observedMillis = Math.max(resolutionMillis, Math.min(spanSlots * resolutionMillis, nowMillis - trackedSinceMillis));
+        ApplicationMetrics.Latency latency = requestCount == 0 ? null : new ApplicationMetrics.Latency(
+                millis(percentile(requestCount, 0.50, maxLatencyMicros)), millis(percentile(requestCount, 0.90, maxLatencyMicros)),
+                millis(percentile(requestCount, 0.95, maxLatencyMicros)), millis(percentile(requestCount, 0.99, maxLatencyMicros)),
+                millis(maxLatencyMicros));
+        ApplicationMetrics.Container container = samples == 0 ? null : new ApplicationMetrics.Container(samples,
+                round(cpuTotal / samples), round(cpuPeak), megabytes(memoryTotal / samples), megabytes(memoryPeak), megabytes(diskPeak));
+        return new ApplicationMetrics(name, observedMillis / 1000, requestCount,
+                round(requestCount * 1000.0 / observedMillis), serverErrorCount, clientErrorCount,
+                requestCount == 0 ? null : round(serverErrorCount / (double) requestCount), latency, container);
+    }
+
+    /*
+        Index of the slot for a timestamp, clearing the slot first if it still holds an older epoch;
+        -1 for a timestamp that has already fallen out of the window
+     */
+    private int slot(long timestampMillis) {
+        long epoch = timestampMillis / resolutionMillis;
+        int slot = (int) (epoch % slots);
+        if (slotEpoch[slot] == epoch) {
+            return slot;
+        }
+        if (slotEpoch[slot] > epoch) {
+            return -1;
+        }
+        slotEpoch[slot] = epoch;
+        requests[slot] = 0;
+        serverErrors[slot] = 0;
+        clientErrors[slot] = 0;
+        maxLatency[slot] = 0;
+        Arrays.fill(latencyBuckets, slot * BUCKETS, (slot + 1) * BUCKETS, 0);
+        containerSamples[slot] = 0;
+        cpuSum[slot] = 0;
+        cpuMax[slot] = 0;
+        memorySum[slot] = 0;
+        memoryMax[slot] = 0;
+        diskMax[slot] = 0;
+        return slot;
+    }
+
+    /*
+        The highest value of the bucket holding the requested rank, never above the largest value recorded
+     */
+    private long percentile(long count, double quantile, long max) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += merged[bucket];
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static double millis(long micros) {
+        return round(micros / 1000.0);
+    }
+
+    private static double megabytes(long bytes) {
+        return round(bytes / (1024.0 * 1024.0));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
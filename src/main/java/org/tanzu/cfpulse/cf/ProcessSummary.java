@@ -0,0 +1,4 @@
+package org.tanzu.cfpulse.cf;
+
+public record ProcessSummary(String type, Integer instances, Integer memoryInMb, Integer diskInMb) {
+}
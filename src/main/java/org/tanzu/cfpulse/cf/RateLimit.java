@@ -0,0 +1,64 @@
+package org.tanzu.cfpulse.cf;
+
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    The Cloud Controller rate limit of one foundation, as last reported by the X-RateLimit-* response
+    headers. Between responses, every call let through counts against the remaining requests, so that
+    concurrent callers see the budget shrink before the next response tells them so.
+ */
+final class RateLimit {
+
+    private final AtomicLong remaining = new AtomicLong(-1);
+    private volatile long resetAtMillis;
+
+    void update(HttpHeaders headers, int status) {
+        String reset = headers.get("X-RateLimit-Reset");
+        if (reset != null) {
+            resetAtMillis = parse(reset) * 1000;
+        }
+        String remainingHeader = headers.get("X-RateLimit-Remaining");
+        if (remainingHeader != null) {
+            remaining.set(parse(remainingHeader));
+        }
+        if (status == 429) {
+            remaining.set(0);
+            String retryAfter = headers.get("Retry-After");
+            if (retryAfter != null) {
+                resetAtMillis = Math.max(resetAtMillis, System.currentTimeMillis() + parse(retryAfter) * 1000);
+            }
+        }
+    }
+
+    /*
+        How long to hold back the next call: nothing while more than reserve requests are left, then a
+        growing share of the time until the window resets, and the whole of it once none are left
+     */
+    Duration delay(int reserve, Duration maxDelay) {
+        long untilReset = resetAtMillis - System.currentTimeMillis();
+        if (untilReset <= 0 || remaining.get() < 0) {
+            return Duration.ZERO;
+        }
+        long left = remaining.getAndUpdate(r -> Math.max(0, r - 1));
+        if (left > reserve) {
+            return Duration.ZERO;
+        }
+        long delay = left <= 0 ? untilReset : untilReset / (left + 1);
+        return Duration.ofMillis(Math.min(delay, maxDelay.toMillis()));
+    }
+
+    long remaining() {
+        return remaining.get();
+    }
+
+    private static long parse(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
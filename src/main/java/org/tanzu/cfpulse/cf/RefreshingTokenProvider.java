@@ -0,0 +1,132 @@
+package org.tanzu.cfpulse.cf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cloudfoundry.reactor.ConnectionContext;
+import org.cloudfoundry.reactor.TokenProvider;
+import org.cloudfoundry.reactor.tokenprovider.AbstractUaaTokenProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+    Wraps a UAA token provider so that every client of a foundation is served from one cached token,
+    read without locking. The token is refreshed in the background cf.token.refresh-ahead before it
+    expires (at most halfway through its lifetime), so a tool call only waits for UAA when no token has
+    been fetched yet or a background refresh kept failing until the token ran out. One instance serves
+    one connection context, as every foundation has its own.
+ */
+final class RefreshingTokenProvider implements TokenProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshingTokenProvider.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Used when the token is not a JWT with an exp claim
+    private static final Duration DEFAULT_LIFETIME = Duration.ofMinutes(5);
+
+    // Tokens are considered expired slightly early to allow for clock skew and request latency
+    private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(10);
+
+    private record CachedToken(String token, Instant expiresAt) {
+    }
+
+    private final AbstractUaaTokenProvider delegate;
+    private final Duration refreshAhead;
+    private final AtomicReference<CachedToken> cached = new AtomicReference<>();
+    private final AtomicReference<Disposable> scheduledRefresh = new AtomicReference<>(Disposables.disposed());
+
+    RefreshingTokenProvider(AbstractUaaTokenProvider delegate, Duration refreshAhead) {
+        this.delegate = delegate;
+        this.refreshAhead = refreshAhead;
+    }
+
+    @Override
+    public Mono<String> getToken(ConnectionContext connectionContext) {
+        CachedToken token = cached.get();
+        if (token != null && Instant.now().isBefore(token.expiresAt())) {
+            return Mono.just(token.token());
+        }
+        // The delegate keeps handing out an expired token until it is invalidated; only one caller does so
+        if (token != null && cached.compareAndSet(token, null)) {
+            delegate.invalidate(connectionContext);
+        }
+        // Concurrent callers share the delegate's in-flight request. A caller that lost the race above may
+        // reach the delegate before it was invalidated and get the expired token back, so that is checked for.
+        return delegate.getToken(connectionContext)
+                .flatMap(fetched -> {
+                    if (!isExpired(fetched)) {
+                        return Mono.just(fetched);
+                    }
+                    delegate.invalidate(connectionContext);
+                    return delegate.getToken(connectionContext);
+                })
+                .doOnNext(fetched -> store(connectionContext, fetched));
+    }
+
+    @Override
+    public void invalidate(ConnectionContext connectionContext) {
+        cached.set(null);
+        delegate.invalidate(connectionContext);
+    }
+
+    public void close() {
+        scheduledRefresh.get().dispose();
+    }
+
+    private void store(ConnectionContext connectionContext, String token) {
+        CachedToken previous = cached.get();
+        if (previous != null && previous.token().equals(token)) {
+            return;
+        }
+        Instant expiresAt = expiry(token);
+        // Never publish a token that has already run out
+        if (!Instant.now().isBefore(expiresAt.minus(EXPIRY_MARGIN))) {
+            return;
+        }
+        cached.set(new CachedToken(token, expiresAt.minus(EXPIRY_MARGIN)));
+        scheduleRefresh(connectionContext, expiresAt);
+    }
+
+    private void scheduleRefresh(ConnectionContext connectionContext, Instant expiresAt) {
+        Duration lifetime = Duration.between(Instant.now(), expiresAt);
+        Duration ahead = refreshAhead.compareTo(lifetime.dividedBy(2)) < 0 ? refreshAhead : lifetime.dividedBy(2);
+        Duration delay = lifetime.minus(ahead);
+
+        Disposable refresh = Mono.delay(delay.isNegative() ? Duration.ZERO : delay)
+                .then(Mono.defer(() -> {
+                    delegate.invalidate(connectionContext);
+                    return delegate.getToken(connectionContext);
+                }))
+                .retryWhen(Retry.backoff(3, Duration.ofSeconds(2)))
+                .subscribe(token -> store(connectionContext, token),
+                        e -> logger.warn("Background token refresh failed; the next request will fetch a new token: {}", e.getMessage()));
+        scheduledRefresh.getAndSet(refresh).dispose();
+        logger.debug("Token expires at {}; refreshing in {}", expiresAt, delay);
+    }
+
+    private static boolean isExpired(String token) {
+        return !Instant.now().isBefore(expiry(token).minus(EXPIRY_MARGIN));
+    }
+
+    static Instant expiry(String token) {
+        try {
+            String jwt = token.substring(token.indexOf(' ') + 1);
+            JsonNode claims = OBJECT_MAPPER.readTree(Base64.getUrlDecoder().decode(jwt.split("\\.")[1]));
+            if (claims.hasNonNull("exp")) {
+                return Instant.ofEpochSecond(claims.get("exp").asLong());
+            }
+        } catch (Exception e) {
+            logger.debug("Could not read the token expiry: {}", e.getMessage());
+        }
+        return Instant.now().plus(DEFAULT_LIFETIME);
+    }
+}
@@ -0,0 +1,126 @@
+package org.tanzu.cfpulse.cf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Trims tool results before they are serialized, so that a caller only pays, in bytes and in
+    context tokens, for what it asked for. Results can be cut down to a set of (dotted) fields, and
+    lists can be paged and encoded as a table of columns and rows, which does not repeat the field
+    names on every item. A result nobody asked to shape is returned as it is, to be serialized once.
+ */
+@Component
+public class ResultShaper {
+
+    static final String FIELDS_PARAM = "Only return these fields, using dots for nested fields, e.g. name or instanceDetails.state (optional, defaults to every field)";
+    static final String OFFSET_PARAM = "Number of items to skip (optional)";
+    static final String LIMIT_PARAM = "Maximum number of items to return (optional)";
+    static final String FORMAT_PARAM = "'json' for a list of objects (default) or 'table' for a compact table of columns and rows (optional)";
+
+    private final ObjectMapper objectMapper;
+
+    public ResultShaper(ObjectMapper objectMapper) {
+        // Some Cloud Foundry value types have no properties; they become empty objects rather than failing the call
+        this.objectMapper = objectMapper.copy().disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+
+    Object shape(Object value, List<String> fields) {
+        return fields == null || fields.isEmpty() ? value : project(objectMapper.valueToTree(value), paths(fields));
+    }
+
+    /*
+        Without paging or a table format a list stays a plain JSON array. Otherwise the items come
+        wrapped with the total count and offset, so the caller can ask for the next page.
+     */
+    Object shapeList(List<?> items, List<String> fields, Integer offset, Integer limit, String format) {
+        boolean table = isTable(format);
+        if (!table && (fields == null || fields.isEmpty()) && offset == null && limit == null) {
+            return items;
+        }
+        int from = Math.min(offset == null ? 0 : Math.max(offset, 0), items.size());
+        int to = limit == null ? items.size() : Math.min(items.size(), from + Math.max(limit, 0));
+        List<String[]> paths = fields == null || fields.isEmpty() ? null : paths(fields);
+
+        List<JsonNode> page = new ArrayList<>(to - from);
+        for (Object item : items.subList(from, to)) {
+            JsonNode tree = objectMapper.valueToTree(item);
+            page.add(paths == null ? tree : project(tree, paths));
+        }
+
+        if (!table && offset == null && limit == null) {
+            return objectMapper.createArrayNode().addAll(page);
+        }
+        ObjectNode result = objectMapper.createObjectNode()
+                .put("total", items.size())
+                .put("offset", from);
+        if (table) {
+            List<String> columns = fields == null || fields.isEmpty() ? topLevelFields(page) : fields;
+            result.set("columns", objectMapper.valueToTree(columns));
+            ArrayNode rows = result.putArray("rows");
+            for (JsonNode item : page) {
+                ArrayNode row = rows.addArray();
+                columns.forEach(column -> row.add(item.at("/" + column.replace('.', '/'))));
+            }
+        } else {
+            result.putArray("items").addAll(page);
+        }
+        return result;
+    }
+
+    private static boolean isTable(String format) {
+        if (format == null || format.isEmpty() || "json".equalsIgnoreCase(format)) {
+            return false;
+        }
+        if ("table".equalsIgnoreCase(format)) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unknown format " + format + "; use json or table");
+    }
+
+    private static List<String[]> paths(List<String> fields) {
+        return fields.stream().map(field -> field.split("\\.")).toList();
+    }
+
+    private JsonNode project(JsonNode node, List<String[]> paths) {
+        if (node.isArray()) {
+            ArrayNode projected = objectMapper.createArrayNode();
+            node.forEach(element -> projected.add(project(element, paths)));
+            return projected;
+        }
+        if (!node.isObject()) {
+            return node;
+        }
+        // Group the remaining path segments by the field they start with, keeping the requested order
+        Map<String, List<String[]>> byField = new LinkedHashMap<>();
+        for (String[] path : paths) {
+            byField.computeIfAbsent(path[0], field -> new ArrayList<>()).add(Arrays.copyOfRange(path, 1, path.length));
+        }
+        ObjectNode projected = objectMapper.createObjectNode();
+        byField.forEach((field, rest) -> {
+            JsonNode child = node.get(field);
+            if (child != null) {
+                boolean whole = rest.stream().anyMatch(path -> path.length == 0);
+                projected.set(field, whole ? child : project(child, rest));
+            }
+        });
+        return projected;
+    }
+
+    private static List<String> topLevelFields(List<JsonNode> items) {
+        Set<String> fields = new LinkedHashSet<>();
+        items.forEach(item -> item.fieldNames().forEachRemaining(fields::add));
+        return new ArrayList<>(fields);
+    }
+}
@@ -0,0 +1,67 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.client.v2.spacequotadefinitions.SpaceQuotaDefinitionEntity;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+public record SpaceHealth(String space, Instant collectedAt, Totals totals, Quota quota, List<String> warnings,
+                          List<ApplicationHealth> applications) {
+
+    public record Totals(int applications, int started, int instances, int running, int crashed, double cpuPercent,
+                         long memoryUsedMb, long memoryAllocatedMb, long diskUsedMb, int crashes) {
+    }
+
+    /*
+        Limits of the space quota, if the space has one; a limit of -1 means unlimited
+     */
+    public record Quota(String name, Integer totalMemoryLimitMb, Integer instanceMemoryLimitMb, Double memoryAllocatedPercent) {
+    }
+
+    private static final double WARNING_RATIO = 0.9;
+
+    static SpaceHealth of(String space, Optional<SpaceQuotaDefinitionEntity> spaceQuota, List<ApplicationHealth> applications,
+                          Comparator<ApplicationHealth> ranking, int top) {
+        Totals totals = new Totals(applications.size(),
+                (int) applications.stream().filter(ApplicationHealth::started).count(),
+                applications.stream().filter(ApplicationHealth::started).mapToInt(ApplicationHealth::instances).sum(),
+                applications.stream().mapToInt(ApplicationHealth::running).sum(),
+                applications.stream().mapToInt(ApplicationHealth::crashed).sum(),
+                Math.round(applications.stream().mapToDouble(ApplicationHealth::cpuPercent).sum() * 100) / 100.0,
+                applications.stream().mapToLong(ApplicationHealth::memoryUsedMb).sum(),
+                applications.stream().mapToLong(ApplicationHealth::memoryAllocatedMb).sum(),
+                applications.stream().mapToLong(ApplicationHealth::diskUsedMb).sum(),
+                applications.stream().mapToInt(ApplicationHealth::crashes).sum());
+        Quota quota = spaceQuota.map(q -> new Quota(q.getName(), q.getMemoryLimit(), q.getInstanceMemoryLimit(),
+                        q.getMemoryLimit() == null || q.getMemoryLimit() <= 0 ? null :
+                                Math.round(totals.memoryAllocatedMb() * 10_000.0 / q.getMemoryLimit()) / 100.0))
+                .orElse(null);
+
+        return new SpaceHealth(space, Instant.now(), totals, quota, warnings(applications, quota),
+                applications.stream().sorted(ranking).limit(top).toList());
+    }
+
+    private static List<String> warnings(List<ApplicationHealth> applications, Quota quota) {
+        List<String> warnings = new ArrayList<>();
+        if (quota != null && quota.memoryAllocatedPercent() != null && quota.memoryAllocatedPercent() >= WARNING_RATIO * 100) {
+            warnings.add("Space quota " + quota.name() + " is " + quota.memoryAllocatedPercent() + "% allocated");
+        }
+        for (ApplicationHealth app : applications) {
+            if (app.error() != null) {
+                warnings.add(app.name() + ": statistics unavailable: " + app.error());
+            } else if (app.crashed() > 0) {
+                warnings.add(app.name() + ": " + app.crashed() + " of " + app.instances() + " instances crashed");
+            } else if (app.started() && app.running() < app.instances()) {
+                warnings.add(app.name() + ": " + app.running() + " of " + app.instances() + " instances running");
+            }
+            if (app.memoryLimitMb() > 0 && app.running() > 0 &&
+                    app.memoryUsedMb() >= WARNING_RATIO * app.memoryLimitMb() * app.running()) {
+                warnings.add(app.name() + ": memory use is near its limit of " + app.memoryLimitMb() + " MB per instance");
+            }
+        }
+        return warnings;
+    }
+}
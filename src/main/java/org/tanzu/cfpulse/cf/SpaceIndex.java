@@ -0,0 +1,586 @@
+package org.tanzu.cfpulse.cf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.cloudfoundry.client.CloudFoundryClient;
+import org.cloudfoundry.client.v3.auditevents.AuditEventResource;
+import org.cloudfoundry.client.v3.auditevents.ListAuditEventsRequest;
+import org.cloudfoundry.client.v3.auditevents.ListAuditEventsResponse;
+import org.cloudfoundry.client.v3.processes.ListProcessesRequest;
+import org.cloudfoundry.operations.DefaultCloudFoundryOperations;
+import org.cloudfoundry.operations.applications.ApplicationSummary;
+import org.cloudfoundry.operations.routes.Level;
+import org.cloudfoundry.operations.routes.ListRoutesRequest;
+import org.cloudfoundry.operations.routes.Route;
+import org.cloudfoundry.operations.services.ListServiceKeysRequest;
+import org.cloudfoundry.operations.services.ServiceInstanceSummary;
+import org.cloudfoundry.operations.services.ServiceInstanceType;
+import org.cloudfoundry.operations.services.ServiceKey;
+import org.cloudfoundry.util.PaginationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.tanzu.cfpulse.cf.CfResilience.Endpoint;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/*
+    In-memory snapshot of the configured space: apps, processes, routes, service instances with their
+    bindings, and service keys. It is built once and then kept current by polling the space's audit
+    events (/v3/audit_events) and reloading only the parts of the snapshot an event touches. If more
+    events arrived than one poll can see, the whole snapshot is rebuilt. Instance counts and states
+    change without audit events, so apps and processes are also reloaded every reconcile interval, and
+    the app list, which carries the running instance counts, every instance state interval, short of the
+    applications cache TTL. It stays in use while it reloads; only if a reload falls behind the TTL do
+    lookups of the app list come back empty until one lands. Service
+    instances whose keys could not be listed are left out of the keys slice, so that lookups of their
+    keys fall through too, and are tried again at the next reconcile. Every load is a guarded read of
+    the default foundation, so the index backs off with the tools when the Cloud Controller struggles.
+
+    A write made through the tools marks the slices it touches dirty, and lookups of a dirty slice come
+    back empty so that callers fall through to the cache or the Cloud Controller, until a reload started
+    after the write has landed. Only one sync runs at a time; refreshes requested meanwhile are queued
+    and run when it finishes.
+ */
+@Component
+public class SpaceIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpaceIndex.class);
+
+    private static final int AUDIT_EVENTS_PAGE_SIZE = 100;
+
+    enum Slice {
+        APPLICATIONS, PROCESSES, ROUTES, SERVICE_INSTANCES, SERVICE_KEYS
+    }
+
+    /*
+        The created_at of the newest applied event, plus the ids seen at that instant
+     */
+    private record AuditEventCursor(String createdAt, Set<String> ids) {
+    }
+
+    private final DefaultCloudFoundryOperations cloudFoundryOperations;
+    private final CloudFoundryClient cloudFoundryClient;
+    private final CfResilience cfResilience;
+    private final CfTarget target;
+    private final boolean enabled;
+    private final int concurrency;
+    private final Duration reconcileInterval;
+    private final Duration instanceStateTtl;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private final Set<Slice> pendingSlices = ConcurrentHashMap.newKeySet();
+    // A slice is dirty while fewer of its reloads have landed than writes have touched it
+    private final AtomicLongArray invalidations = new AtomicLongArray(Slice.values().length);
+    private final AtomicLongArray reloads = new AtomicLongArray(Slice.values().length);
+    private final AtomicLongArray reloadedAt = new AtomicLongArray(Slice.values().length);
+    private final AtomicReference<AuditEventCursor> auditEventCursor = new AtomicReference<>();
+    private volatile Instant reconciledAt = Instant.MIN;
+    private final AtomicLong auditEventsApplied = new AtomicLong();
+    private final MeterRegistry meterRegistry;
+    private Counter resyncs;
+
+    public SpaceIndex(DefaultCloudFoundryOperations cloudFoundryOperations,
+                      CloudFoundryClient cloudFoundryClient,
+                      CfTargets cfTargets,
+                      CfResilience cfResilience,
+                      MeterRegistry meterRegistry,
+                      @Value("${cf.index.enabled:true}") boolean enabled,
+                      @Value("${cf.index.reconcile-interval:PT2M}") Duration reconcileInterval,
+                      @Value("${cf.cache.ttl.applications:PT15S}") Duration instanceStateTtl,
+                      @Value("${cf.batch.concurrency:8}") int concurrency) {
+        this.cloudFoundryOperations = cloudFoundryOperations;
+        this.cloudFoundryClient = cloudFoundryClient;
+        this.cfResilience = cfResilience;
+        this.target = cfTargets.resolve(null);
+        this.enabled = enabled;
+        this.reconcileInterval = reconcileInterval;
+        this.instanceStateTtl = instanceStateTtl;
+        this.concurrency = concurrency;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("cf.index.staleness", this, SpaceIndex::stalenessSeconds)
+                .description("Seconds since the space index was last reloaded")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        FunctionCounter.builder("cf.index.audit.events", auditEventsApplied, AtomicLong::get)
+                .description("Audit events applied to the space index")
+                .register(meterRegistry);
+        resyncs = Counter.builder("cf.index.resyncs")
+                .description("Full rebuilds of the space index")
+                .register(meterRegistry);
+    }
+
+    /*
+        Lookups, empty until the first sync completes and while a slice they read is dirty
+     */
+    Optional<List<ApplicationSummary>> applications() {
+        return currentInstanceState().map(s -> List.copyOf(s.applications.values()));
+    }
+
+    Optional<List<ServiceInstanceSummary>> serviceInstances() {
+        return current(Slice.SERVICE_INSTANCES).map(s -> List.copyOf(s.serviceInstances.values()));
+    }
+
+    Optional<List<ServiceKey>> serviceKeys(String serviceInstanceName) {
+        return current(Slice.SERVICE_INSTANCES, Slice.SERVICE_KEYS).flatMap(s -> Optional.ofNullable(s.serviceInstances.get(serviceInstanceName))
+                .flatMap(serviceInstance -> serviceInstance.getType() == ServiceInstanceType.MANAGED ?
+                        Optional.ofNullable(s.serviceKeys.get(serviceInstanceName)) : Optional.of(List.<ServiceKey>of())));
+    }
+
+    Optional<List<String>> applicationsBoundTo(String serviceInstanceName) {
+        return current(Slice.SERVICE_INSTANCES).map(s -> s.serviceInstances.get(serviceInstanceName))
+                .map(ServiceInstanceSummary::getApplications);
+    }
+
+    Optional<ApplicationRelationships> relationships(String applicationName) {
+        return current(Slice.values()).flatMap(s -> Optional.ofNullable(s.applications.get(applicationName))
+                .map(application -> new ApplicationRelationships(applicationName,
+                        s.serviceInstancesByApplication.getOrDefault(applicationName, List.of()),
+                        s.routesByApplication.getOrDefault(applicationName, List.of()),
+                        s.processesByApplicationId.getOrDefault(application.getId(), List.of()))));
+    }
+
+    boolean catchingUp() {
+        return Arrays.stream(Slice.values()).anyMatch(this::isDirty);
+    }
+
+    SpaceIndexStatus status() {
+        Snapshot s = snapshot.get();
+        if (s == null) {
+            return new SpaceIndexStatus(false, null, -1, 0, 0, 0, auditEventsApplied.get());
+        }
+        return new SpaceIndexStatus(true, s.syncedAt, (long) stalenessSeconds(), s.applications.size(),
+                s.serviceInstances.size(), s.routes.size(), auditEventsApplied.get());
+    }
+
+    private Optional<Snapshot> current(Slice... slices) {
+        if (!enabled || Arrays.stream(slices).anyMatch(this::isDirty)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(snapshot.get());
+    }
+
+    /*
+        The app summaries carry the running instance counts, which change without an audit event. They are
+        reloaded in the background every instance state interval; should that fall behind, a lookup of a
+        slice older than the applications cache TTL comes back empty and asks for a reload
+     */
+    private Optional<Snapshot> currentInstanceState() {
+        Optional<Snapshot> current = current(Slice.APPLICATIONS);
+        if (current.isPresent() && System.currentTimeMillis() - reloadedAt.get(Slice.APPLICATIONS.ordinal()) > instanceStateTtl.toMillis()) {
+            reload(Slice.APPLICATIONS);
+            return Optional.empty();
+        }
+        return current;
+    }
+
+    private boolean isDirty(Slice slice) {
+        return reloads.get(slice.ordinal()) < invalidations.get(slice.ordinal());
+    }
+
+    private double stalenessSeconds() {
+        Snapshot s = snapshot.get();
+        return s == null ? Double.NaN : Duration.between(s.syncedAt, Instant.now()).toMillis() / 1000.0;
+    }
+
+    /*
+        Synchronization
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void initialSync() {
+        if (enabled) {
+            resync().subscribe(status -> logger.info("Space index built: {}", status),
+                    e -> logger.warn("Initial space index build failed, retrying on next poll: {}", e.getMessage()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cf.index.poll-interval:PT30S}", initialDelayString = "${cf.index.poll-interval:PT30S}")
+    void poll() {
+        if (enabled) {
+            exclusively(Mono.defer(() -> snapshot.get() == null ? fullSync() : incrementalSync()))
+                    .subscribe(null, e -> logger.warn("Space index poll failed: {}", e.getMessage()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cf.index.instance-state-interval:PT10S}", initialDelayString = "${cf.index.instance-state-interval:PT10S}")
+    void refreshInstanceState() {
+        if (enabled) {
+            reload(Slice.APPLICATIONS);
+        }
+    }
+
+    Mono<SpaceIndexStatus> resync() {
+        if (!enabled) {
+            return Mono.error(new IllegalStateException("The space index is disabled (cf.index.enabled=false)"));
+        }
+        return exclusively(fullSync())
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("The space index is being synchronized, try again shortly")))
+                .then(Mono.fromSupplier(this::status));
+    }
+
+    /*
+        Marks the slices dirty straight away, so that reads stop using them, and reloads them as soon as
+        no other sync is running
+     */
+    void refresh(Slice... slices) {
+        if (!enabled) {
+            return;
+        }
+        for (Slice slice : slices) {
+            invalidations.incrementAndGet(slice.ordinal());
+            pendingSlices.add(slice);
+        }
+        runPending();
+    }
+
+    /*
+        Reloads a slice as soon as no other sync is running, without taking it out of use meanwhile
+     */
+    private void reload(Slice slice) {
+        pendingSlices.add(slice);
+        runPending();
+    }
+
+    private void runPending() {
+        if (!pendingSlices.isEmpty() && snapshot.get() != null) {
+            exclusively(Mono.defer(() -> cloudFoundryOperations.getSpaceId().flatMap(spaceId -> refresh(takePendingSlices(), spaceId))))
+                    .subscribe(null, e -> logger.warn("Space index refresh failed: {}", e.getMessage()));
+        }
+    }
+
+    /*
+        Runs the sync unless another one is in progress, in which case it completes empty without
+        subscribing to it. Refreshes queued while it ran are started when it succeeds; after a failure
+        they wait for the next poll.
+     */
+    private Mono<Boolean> exclusively(Mono<Void> sync) {
+        return Mono.defer(() -> {
+            if (!syncing.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            return sync.thenReturn(true)
+                    .doFinally(signal -> {
+                        syncing.set(false);
+                        if (signal == SignalType.ON_COMPLETE) {
+                            runPending();
+                        }
+                    });
+        });
+    }
+
+    private Set<Slice> takePendingSlices() {
+        EnumSet<Slice> slices = EnumSet.noneOf(Slice.class);
+        for (Slice slice : Slice.values()) {
+            if (pendingSlices.remove(slice)) {
+                slices.add(slice);
+            }
+        }
+        return slices;
+    }
+
+    private Mono<Void> fullSync() {
+        return Mono.defer(() -> fullSync(invalidations(EnumSet.allOf(Slice.class))));
+    }
+
+    private Mono<Void> fullSync(long[] invalidated) {
+        return cloudFoundryOperations.getSpaceId()
+                .flatMap(spaceId -> latestAuditEvents(spaceId)
+                        .flatMap(events -> Mono.zip(loadApplications(), loadProcesses(spaceId), loadRoutes(), loadServiceInstances())
+                                .flatMap(t -> loadServiceKeys(t.getT4())
+                                        .map(keys -> new Snapshot(t.getT1(), t.getT2(), t.getT3(), t.getT4(), keys, Instant.now())))
+                                .doOnNext(s -> {
+                                    snapshot.set(s);
+                                    advanceCursor(events);
+                                    EnumSet.allOf(Slice.class).forEach(slice -> reloaded(slice, invalidated));
+                                    reconciledAt = s.syncedAt;
+                                    resyncs.increment();
+                                })))
+                .then();
+    }
+
+    private Mono<Void> incrementalSync() {
+        return cloudFoundryOperations.getSpaceId()
+                .flatMap(spaceId -> latestAuditEvents(spaceId)
+                        .flatMap(events -> {
+                            List<AuditEventResource> unseen = events.stream().filter(this::isUnseen).toList();
+                            if (unseen.size() >= AUDIT_EVENTS_PAGE_SIZE) {
+                                // Older unseen events did not fit in one page
+                                return fullSync();
+                            }
+                            Set<Slice> slices = takePendingSlices();
+                            unseen.forEach(event -> slices.addAll(slicesFor(event.getType())));
+                            boolean reconcile = Instant.now().isAfter(reconciledAt.plus(reconcileInterval));
+                            if (reconcile) {
+                                slices.addAll(EnumSet.of(Slice.APPLICATIONS, Slice.PROCESSES));
+                                if (snapshot.get().missingServiceKeys()) {
+                                    slices.add(Slice.SERVICE_KEYS);
+                                }
+                            }
+                            return refresh(slices, spaceId)
+                                    .doOnSuccess(v -> {
+                                        advanceCursor(events);
+                                        auditEventsApplied.addAndGet(unseen.size());
+                                        if (reconcile) {
+                                            reconciledAt = Instant.now();
+                                        }
+                                    });
+                        }));
+    }
+
+    private Mono<Void> refresh(Set<Slice> slices, String spaceId) {
+        if (slices.isEmpty()) {
+            return Mono.empty();
+        }
+        long[] invalidated = invalidations(slices);
+        Mono<Void> applications = slices.contains(Slice.APPLICATIONS) ?
+                loadApplications().doOnNext(a -> update(s -> s.withApplications(a))).then() : Mono.empty();
+        Mono<Void> processes = slices.contains(Slice.PROCESSES) ?
+                loadProcesses(spaceId).doOnNext(p -> update(s -> s.withProcesses(p))).then() : Mono.empty();
+        Mono<Void> routes = slices.contains(Slice.ROUTES) ?
+                loadRoutes().doOnNext(r -> update(s -> s.withRoutes(r))).then() : Mono.empty();
+        Mono<Void> serviceInstances = slices.contains(Slice.SERVICE_INSTANCES) ?
+                loadServiceInstances().doOnNext(i -> update(s -> s.withServiceInstances(i))).then() : Mono.empty();
+        Mono<Void> serviceKeys = slices.contains(Slice.SERVICE_KEYS) ?
+                Mono.defer(() -> loadServiceKeys(List.copyOf(snapshot.get().serviceInstances.values())))
+                        .doOnNext(k -> update(s -> s.withServiceKeys(k))).then() : Mono.empty();
+
+        return Mono.when(applications, processes, routes, serviceInstances.then(serviceKeys))
+                .then(Mono.fromRunnable(() -> {
+                    update(s -> s.withSyncedAt(Instant.now()));
+                    slices.forEach(slice -> reloaded(slice, invalidated));
+                }))
+                // A failed reload leaves its slices dirty until the next poll reloads them
+                .doOnError(e -> pendingSlices.addAll(slices))
+                .then();
+    }
+
+    /*
+        Invalidation counts as they were when a reload started; the reload only clears what they cover
+     */
+    private long[] invalidations(Set<Slice> slices) {
+        long[] invalidated = new long[Slice.values().length];
+        slices.forEach(slice -> invalidated[slice.ordinal()] = invalidations.get(slice.ordinal()));
+        return invalidated;
+    }
+
+    private void reloaded(Slice slice, long[] invalidated) {
+        reloads.accumulateAndGet(slice.ordinal(), invalidated[slice.ordinal()], Math::max);
+        reloadedAt.set(slice.ordinal(), System.currentTimeMillis());
+    }
+
+    private void update(UnaryOperator<Snapshot> change) {
+        snapshot.updateAndGet(s -> s == null ? null : change.apply(s));
+    }
+
+    static Set<Slice> slicesFor(String auditEventType) {
+        if (auditEventType.startsWith("audit.app.map-route") || auditEventType.startsWith("audit.app.unmap-route")) {
+            return EnumSet.of(Slice.APPLICATIONS, Slice.ROUTES);
+        } else if (auditEventType.startsWith("audit.app.")) {
+            return EnumSet.of(Slice.APPLICATIONS, Slice.PROCESSES);
+        } else if (auditEventType.startsWith("audit.route.")) {
+            return EnumSet.of(Slice.ROUTES);
+        } else if (auditEventType.startsWith("audit.service_instance.") || auditEventType.startsWith("audit.user_provided_service_instance.")) {
+            return EnumSet.of(Slice.SERVICE_INSTANCES, Slice.SERVICE_KEYS);
+        } else if (auditEventType.startsWith("audit.service_binding.") || auditEventType.startsWith("audit.service_credential_binding.")) {
+            return EnumSet.of(Slice.SERVICE_INSTANCES);
+        } else if (auditEventType.startsWith("audit.service_key.")) {
+            return EnumSet.of(Slice.SERVICE_KEYS);
+        }
+        return EnumSet.noneOf(Slice.class);
+    }
+
+    /*
+        Audit event cursor
+     */
+    private Mono<List<AuditEventResource>> latestAuditEvents(String spaceId) {
+        ListAuditEventsRequest request = ListAuditEventsRequest.builder()
+                .spaceId(spaceId)
+                .orderBy("-created_at")
+                .perPage(AUDIT_EVENTS_PAGE_SIZE)
+                .page(1)
+                .build();
+        return cfResilience.read(target, Endpoint.EVENTS, () -> cloudFoundryClient.auditEventsV3().list(request))
+                .map(ListAuditEventsResponse::getResources);
+    }
+
+    private boolean isUnseen(AuditEventResource event) {
+        AuditEventCursor cursor = auditEventCursor.get();
+        if (cursor == null) {
+            return true;
+        }
+        int comparison = event.getCreatedAt().compareTo(cursor.createdAt());
+        return comparison > 0 || (comparison == 0 && !cursor.ids().contains(event.getId()));
+    }
+
+    private void advanceCursor(List<AuditEventResource> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        String newest = events.get(0).getCreatedAt();
+        Set<String> ids = events.stream().filter(event -> newest.equals(event.getCreatedAt()))
+                .map(AuditEventResource::getId)
+                .collect(Collectors.toSet());
+        auditEventCursor.updateAndGet(cursor -> cursor == null || !newest.equals(cursor.createdAt()) ?
+                new AuditEventCursor(newest, Set.copyOf(ids)) :
+                new AuditEventCursor(newest, union(cursor.ids(), ids)));
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        return Set.copyOf(union);
+    }
+
+    /*
+        Loaders
+     */
+    private Mono<List<ApplicationSummary>> loadApplications() {
+        return cfResilience.read(target, Endpoint.APPLICATIONS, () -> cloudFoundryOperations.applications().list().collectList());
+    }
+
+    private Mono<Map<String, List<ProcessSummary>>> loadProcesses(String spaceId) {
+        return cfResilience.read(target, Endpoint.APPLICATIONS, () -> PaginationUtils.requestClientV3Resources(page -> cloudFoundryClient.processes()
+                        .list(ListProcessesRequest.builder().spaceId(spaceId).page(page).build()))
+                .collect(Collectors.groupingBy(process -> process.getRelationships().getApp().getData().getId(),
+                        Collectors.mapping(process -> new ProcessSummary(process.getType(), process.getInstances(),
+                                process.getMemoryInMb(), process.getDiskInMb()), Collectors.toList()))));
+    }
+
+    private Mono<List<Route>> loadRoutes() {
+        return cfResilience.read(target, Endpoint.ROUTES, () -> cloudFoundryOperations.routes()
+                .list(ListRoutesRequest.builder().level(Level.SPACE).build()).collectList());
+    }
+
+    private Mono<List<ServiceInstanceSummary>> loadServiceInstances() {
+        return cfResilience.read(target, Endpoint.SERVICE_INSTANCES, () -> cloudFoundryOperations.services().listInstances().collectList());
+    }
+
+    private Mono<Map<String, List<ServiceKey>>> loadServiceKeys(List<ServiceInstanceSummary> serviceInstances) {
+        return Flux.fromIterable(serviceInstances)
+                .filter(serviceInstance -> serviceInstance.getType() == ServiceInstanceType.MANAGED)
+                .flatMap(serviceInstance -> cfResilience.read(target, Endpoint.SERVICE_KEYS, () -> cloudFoundryOperations.services()
+                                .listServiceKeys(ListServiceKeysRequest.builder().serviceInstanceName(serviceInstance.getName()).build())
+                                .collectList())
+                        .map(keys -> Tuples.of(serviceInstance.getName(), keys))
+                        // Left out rather than recorded as having no keys, so that lookups ask the Cloud Controller
+                        .onErrorResume(e -> {
+                            logger.warn("Could not list the keys of service instance {}: {}", serviceInstance.getName(), e.getMessage());
+                            return Mono.empty();
+                        }), concurrency)
+                .collectMap(t -> t.getT1(), t -> t.getT2());
+    }
+
+    /*
+        Immutable snapshot; each refresh swaps in a copy with one slice replaced
+     */
+    private static final class Snapshot {
+
+        final Map<String, ApplicationSummary> applications;
+        final Map<String, List<ProcessSummary>> processesByApplicationId;
+        final List<Route> routes;
+        final Map<String, ServiceInstanceSummary> serviceInstances;
+        final Map<String, List<ServiceKey>> serviceKeys;
+        final Instant syncedAt;
+
+        final Map<String, List<String>> serviceInstancesByApplication;
+        final Map<String, List<String>> routesByApplication;
+
+        Snapshot(List<ApplicationSummary> applications, Map<String, List<ProcessSummary>> processesByApplicationId,
+                 List<Route> routes, List<ServiceInstanceSummary> serviceInstances,
+                 Map<String, List<ServiceKey>> serviceKeys, Instant syncedAt) {
+            this(byName(applications, ApplicationSummary::getName), processesByApplicationId, routes,
+                    byName(serviceInstances, ServiceInstanceSummary::getName), serviceKeys, syncedAt);
+        }
+
+        private Snapshot(Map<String, ApplicationSummary> applications, Map<String, List<ProcessSummary>> processesByApplicationId,
+                         List<Route> routes, Map<String, ServiceInstanceSummary> serviceInstances,
+                         Map<String, List<ServiceKey>> serviceKeys, Instant syncedAt) {
+            this.applications = applications;
+            this.processesByApplicationId = processesByApplicationId;
+            this.routes = routes;
+            this.serviceInstances = serviceInstances;
+            this.serviceKeys = serviceKeys;
+            this.syncedAt = syncedAt;
+
+            Map<String, List<String>> instancesByApplication = new HashMap<>();
+            serviceInstances.values().forEach(serviceInstance -> serviceInstance.getApplications().forEach(application ->
+                    instancesByApplication.computeIfAbsent(application, a -> new ArrayList<>()).add(serviceInstance.getName())));
+            this.serviceInstancesByApplication = instancesByApplication;
+
+            Map<String, List<String>> urlsByApplication = new HashMap<>();
+            routes.forEach(route -> route.getApplications().forEach(application ->
+                    urlsByApplication.computeIfAbsent(application, a -> new ArrayList<>()).add(url(route))));
+            this.routesByApplication = urlsByApplication;
+        }
+
+        Snapshot withApplications(List<ApplicationSummary> applications) {
+            return new Snapshot(byName(applications, ApplicationSummary::getName), processesByApplicationId, routes,
+                    serviceInstances, serviceKeys, syncedAt);
+        }
+
+        Snapshot withProcesses(Map<String, List<ProcessSummary>> processesByApplicationId) {
+            return new Snapshot(applications, processesByApplicationId, routes, serviceInstances, serviceKeys, syncedAt);
+        }
+
+        Snapshot withRoutes(List<Route> routes) {
+            return new Snapshot(applications, processesByApplicationId, routes, serviceInstances, serviceKeys, syncedAt);
+        }
+
+        Snapshot withServiceInstances(List<ServiceInstanceSummary> serviceInstances) {
+            return new Snapshot(applications, processesByApplicationId, routes,
+                    byName(serviceInstances, ServiceInstanceSummary::getName), serviceKeys, syncedAt);
+        }
+
+        Snapshot withServiceKeys(Map<String, List<ServiceKey>> serviceKeys) {
+            return new Snapshot(applications, processesByApplicationId, routes, serviceInstances, serviceKeys, syncedAt);
+        }
+
+        boolean missingServiceKeys() {
+            return serviceInstances.values().stream().anyMatch(serviceInstance ->
+                    serviceInstance.getType() == ServiceInstanceType.MANAGED && !serviceKeys.containsKey(serviceInstance.getName()));
+        }
+
+        Snapshot withSyncedAt(Instant syncedAt) {
+            return new Snapshot(applications, processesByApplicationId, routes, serviceInstances, serviceKeys, syncedAt);
+        }
+
+        private static <T> Map<String, T> byName(List<T> resources, Function<T, String> name) {
+            Map<String, T> byName = new LinkedHashMap<>();
+            resources.forEach(resource -> byName.put(name.apply(resource), resource));
+            return byName;
+        }
+
+        private static String url(Route route) {
+            String host = route.getHost() == null || route.getHost().isEmpty() ? "" : route.getHost() + ".";
+            String port = route.getPort() == null || route.getPort().isEmpty() ? "" : ":" + route.getPort();
+            String path = route.getPath() == null ? "" : route.getPath();
+            return host + route.getDomain() + port + path;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.tanzu.cfpulse.cf;
+
+import java.time.Instant;
+
+public record SpaceIndexStatus(boolean ready, Instant syncedAt, long stalenessSeconds, int applications,
+                               int serviceInstances, int routes, long auditEventsApplied) {
+}
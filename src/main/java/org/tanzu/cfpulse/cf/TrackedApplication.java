@@ -0,0 +1,6 @@
+package org.tanzu.cfpulse.cf;
+
+import java.time.Instant;
+
+public record TrackedApplication(String name, CfTarget target, Instant trackedSince, long envelopes, String error) {
+}
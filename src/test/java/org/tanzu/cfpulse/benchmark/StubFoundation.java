@@ -0,0 +1,791 @@
+package org.tanzu.cfpulse.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.cloudfoundry.dropsonde.events.Envelope;
+import org.cloudfoundry.dropsonde.events.HttpStartStop;
+import org.cloudfoundry.dropsonde.events.Method;
+import org.cloudfoundry.dropsonde.events.PeerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/*
+    A local stand-in for a Cloud Foundry foundation, serving the parts of the Cloud Controller v2 and v3
+    APIs, UAA and Doppler that the tools call. It holds one organization and space with a fixed number of
+    applications and service instances, answers list requests in pages of a configurable size, and holds
+    back every response for a configurable latency so that benchmarks pay the round trips a real
+    foundation would cost. It can also answer 429 once a rate limit is used up or at random, and hold
+    back a share of responses for longer, to exercise the server's throttling, retries and breakers;
+    tests can switch such faults on and off with throttle and stall. Shared by the tests and the benchmarks.
+    Writes are acknowledged without changing anything, so every run sees the same data, but each one is
+    recorded as an audit event for the space index to pick up. Like a real resource cache, resource
+    matching remembers every file it has been asked about, so a repeated push only uploads what changed.
+    Served over plain HTTP; point the server at it with cf.connection.secure=false.
+ */
+public final class StubFoundation implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StubFoundation.class);
+
+    public static final String ORGANIZATION = "bench-org";
+    public static final String SPACE = "bench-space";
+    public static final String SERVICE_OFFERING = "bench-db";
+    public static final String SERVICE_PLAN = "small";
+
+    private static final String CREATED_AT = "2025-01-01T00:00:00Z";
+    private static final String ORGANIZATION_ID = uuid("organization", 0);
+    private static final String SPACE_ID = uuid("space", 0);
+    private static final String STACK_ID = uuid("stack", 0);
+    private static final String DOMAIN_ID = uuid("domain", 0);
+    private static final String SERVICE_ID = uuid("service", 0);
+    private static final String SERVICE_PLAN_ID = uuid("service-plan", 0);
+    private static final String QUOTA_ID = uuid("space-quota", 0);
+    private static final String DOMAIN = "apps.bench.local";
+    private static final byte[] NO_BODY = new byte[0];
+    private static final TypeReference<List<Map<String, Object>>> RESOURCES = new TypeReference<>() {
+    };
+
+    /*
+        latency: added to every response; pageSize: resources per page of a list; envelopesPerSecond: rate of
+        the HttpStartStop envelopes streamed for each application; rateLimit: Cloud Controller requests allowed
+        per rateLimitWindow before the stub answers 429, as reported in the X-RateLimit-* headers;
+        throttledRatio: share of requests answered 429 regardless of the budget; latencySpike and
+        latencySpikeRatio: a longer delay used instead of latency for that share of responses
+     */
+    public record Settings(Duration latency, int pageSize, int organizations, int applications, int serviceInstances,
+                           int envelopesPerSecond, long rateLimit, Duration rateLimitWindow, double throttledRatio,
+                           Duration latencySpike, double latencySpikeRatio) {
+
+        public static Settings fromSystemProperties() {
+            return new Settings(Duration.parse(System.getProperty("stub.latency", "PT0.02S")),
+                    Integer.getInteger("stub.page-size", 50),
+                    Integer.getInteger("stub.organizations", 120),
+                    Integer.getInteger("stub.applications", 200),
+                    Integer.getInteger("stub.service-instances", 50),
+                    Integer.getInteger("stub.envelopes-per-second", 1000),
+                    Long.getLong("stub.rate-limit", 100_000),
+                    Duration.parse(System.getProperty("stub.rate-limit-window", "PT1H")),
+                    Double.parseDouble(System.getProperty("stub.throttled-ratio", "0")),
+                    Duration.parse(System.getProperty("stub.latency-spike", "PT1S")),
+                    Double.parseDouble(System.getProperty("stub.latency-spike-ratio", "0")));
+        }
+
+        public Settings withLatency(Duration latency, int pageSize) {
+            return new Settings(latency, pageSize, organizations, applications, serviceInstances, envelopesPerSecond,
+                    rateLimit, rateLimitWindow, throttledRatio, latencySpike, latencySpikeRatio);
+        }
+
+        List<String> systemProperties() {
+            return List.of("-Dstub.latency=" + latency, "-Dstub.page-size=" + pageSize, "-Dstub.organizations=" + organizations,
+                    "-Dstub.applications=" + applications, "-Dstub.service-instances=" + serviceInstances,
+                    "-Dstub.envelopes-per-second=" + envelopesPerSecond, "-Dstub.rate-limit=" + rateLimit,
+                    "-Dstub.rate-limit-window=" + rateLimitWindow, "-Dstub.throttled-ratio=" + throttledRatio,
+                    "-Dstub.latency-spike=" + latencySpike, "-Dstub.latency-spike-ratio=" + latencySpikeRatio);
+        }
+    }
+
+    /*
+        A stub running in a JVM of its own
+     */
+    public record Forked(Process process, String apiHost) implements AutoCloseable {
+
+        public Map<String, Object> applicationProperties() {
+            return StubFoundation.applicationProperties(apiHost);
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private record Route(HttpMethod method, Pattern path, boolean readsBody, Function<Call, Object> handler) {
+    }
+
+    private record Call(Matcher path, QueryStringDecoder uri, byte[] body) {
+
+        String id() {
+            return path.group(1);
+        }
+
+        String parameter(String name) {
+            List<String> values = uri.parameters().get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        int page() {
+            String page = parameter("page");
+            return page == null ? 1 : Integer.parseInt(page);
+        }
+    }
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Route> routes = new ArrayList<>();
+    private final String accessToken;
+    private final Map<String, Integer> applicationIndexes = new HashMap<>();
+    private final List<Map<String, Object>> applications;
+    private final List<Map<String, Object>> serviceInstances;
+    private final List<Map<String, Object>> organizations;
+    private final List<Map<String, Object>> serviceBindings;
+    private final List<Map<String, Object>> applicationRoutes;
+    private final Map<String, Object> spaceSummary;
+    private final List<Map<String, Object>> processes;
+    private final List<Map<String, Object>> auditEvents = new CopyOnWriteArrayList<>();
+    private final Set<String> knownResources = ConcurrentHashMap.newKeySet();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicLong windowStartMillis = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong requestsInWindow = new AtomicLong();
+    private final AtomicLong cloudControllerRequests = new AtomicLong();
+    // Cloud Controller requests still to answer with 429, whatever the rate limit
+    private final AtomicInteger throttledRequests = new AtomicInteger();
+    private volatile boolean stalling;
+    private DisposableServer server;
+    private String root;
+
+    private StubFoundation(Settings settings) {
+        this.settings = settings;
+        this.accessToken = accessToken();
+        IntStream.range(0, settings.applications()).forEach(index -> applicationIndexes.put(uuid("app", index), index));
+        this.applications = IntStream.range(0, settings.applications()).mapToObj(this::application).toList();
+        this.serviceInstances = IntStream.range(0, settings.serviceInstances()).mapToObj(this::serviceInstance).toList();
+        this.applicationRoutes = IntStream.range(0, settings.applications())
+                .mapToObj(index -> v2Resource("/v2/routes/", uuid("route", index), Map.of("host", applicationName(index),
+                        "domain_guid", DOMAIN_ID, "space_guid", SPACE_ID, "path", "")))
+                .toList();
+        this.serviceBindings = IntStream.range(0, Math.min(settings.applications(), settings.serviceInstances()))
+                .mapToObj(index -> v2Resource("/v2/service_bindings/", uuid("service-binding", index), Map.of(
+                        "app_guid", uuid("app", index), "service_instance_guid", uuid("service-instance", index),
+                        "credentials", Map.of(), "binding_options", Map.of())))
+                .toList();
+        this.spaceSummary = spaceSummary();
+        this.processes = IntStream.range(0, settings.applications()).mapToObj(this::process).toList();
+        // The benchmark organization first, then others only there to fill pages
+        this.organizations = IntStream.range(0, Math.max(1, settings.organizations()))
+                .mapToObj(index -> v2Resource("/v2/organizations/", index == 0 ? ORGANIZATION_ID : uuid("organization", index),
+                        Map.of("name", index == 0 ? ORGANIZATION : "org-%04d".formatted(index), "status", "active", "billing_enabled", false)))
+                .toList();
+    }
+
+    public static StubFoundation start(Settings settings, int port) {
+        StubFoundation stub = new StubFoundation(settings);
+        stub.routes();
+        stub.server = HttpServer.create()
+                .host("localhost")
+                .port(port)
+                // Like the Cloud Controller, gzip the responses of clients that accept it
+                .compress(true)
+                .handle(stub::handle)
+                .bindNow();
+        stub.root = "http://localhost:" + stub.server.port();
+        logger.info("Stub foundation listening on {} with {}", stub.root, settings);
+        return stub;
+    }
+
+    /*
+        Starts the stub in a JVM of its own, so that its work and allocations do not count towards the
+        server being measured. Returns once the stub answers.
+     */
+    public static Forked fork(Settings settings) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(settings.systemProperties());
+        command.addAll(List.of("-Dstub.port=" + port, "-cp", System.getProperty("java.class.path"), StubFoundation.class.getName()));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            try (Socket socket = new Socket("localhost", port)) {
+                return new Forked(process, "localhost:" + port);
+            } catch (IOException e) {
+                if (!process.isAlive()) {
+                    throw new IOException("The stub foundation exited with " + process.exitValue());
+                }
+                Thread.sleep(100);
+            }
+        }
+        process.destroy();
+        throw new IOException("The stub foundation did not start listening on port " + port);
+    }
+
+    public String apiHost() {
+        return "localhost:" + server.port();
+    }
+
+    public Map<String, Object> applicationProperties() {
+        return applicationProperties(apiHost());
+    }
+
+    /*
+        Answers the next requests to the Cloud Controller with 429 and a Retry-After header
+     */
+    public void throttle(int requests) {
+        throttledRequests.set(requests);
+    }
+
+    /*
+        While stalling, every Cloud Controller response is held back for latencySpike
+     */
+    public void stall(boolean stalling) {
+        this.stalling = stalling;
+    }
+
+    public long cloudControllerRequests() {
+        return cloudControllerRequests.get();
+    }
+
+    /*
+        The properties that point the server's default foundation at a stub
+     */
+    public static Map<String, Object> applicationProperties(String apiHost) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("cf.apiHost", apiHost);
+        properties.put("cf.username", "bench");
+        properties.put("cf.password", "bench");
+        properties.put("cf.organization", ORGANIZATION);
+        properties.put("cf.space", SPACE);
+        properties.put("cf.connection.secure", "false");
+        return properties;
+    }
+
+    public static String applicationName(int index) {
+        return "app-%04d".formatted(index);
+    }
+
+    public static String serviceInstanceName(int index) {
+        return "service-%04d".formatted(index);
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        if (uri.path().endsWith("/stream") && uri.path().startsWith("/apps/")) {
+            return stream(uri.path().split("/")[2], response);
+        }
+        for (Route route : routes) {
+            Matcher matcher = route.path().matcher(uri.path());
+            if (route.method().equals(request.method()) && matcher.matches()) {
+                Duration latency = ThreadLocalRandom.current().nextDouble() < settings.latencySpikeRatio() ?
+                        settings.latencySpike() : settings.latency();
+                // Only the Cloud Controller API is rate limited, not UAA
+                if (uri.path().startsWith("/v2/") || uri.path().startsWith("/v3/")) {
+                    cloudControllerRequests.incrementAndGet();
+                    if (stalling) {
+                        latency = settings.latencySpike();
+                    }
+                    long used = countRequest();
+                    response.header("X-RateLimit-Limit", String.valueOf(settings.rateLimit()))
+                            .header("X-RateLimit-Remaining", String.valueOf(Math.max(0, settings.rateLimit() - used)))
+                            .header("X-RateLimit-Reset", String.valueOf(windowResetSeconds()));
+                    if (used > settings.rateLimit() || throttledRequests.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ||
+                            ThreadLocalRandom.current().nextDouble() < settings.throttledRatio()) {
+                        return request.receive().then(Mono.delay(latency)).then(tooManyRequests(uri, response));
+                    }
+                }
+                // Drain the request body before answering, so uploads are paid for in full, but only keep it when the route reads it
+                ByteBufFlux received = request.receive();
+                if (uri.path().endsWith("/bits")) {
+                    received = ByteBufFlux.fromInbound(received.doOnNext(content -> uploadedBytes.addAndGet(content.readableBytes())));
+                }
+                Mono<byte[]> requestBody = route.readsBody() ?
+                        received.aggregate().asByteArray().defaultIfEmpty(NO_BODY) :
+                        received.then(Mono.just(NO_BODY));
+                Mono<byte[]> body = requestBody.flatMap(content -> Mono.fromCallable(() ->
+                        objectMapper.writeValueAsBytes(route.handler().apply(new Call(matcher, uri, content)))));
+                if (!latency.isZero()) {
+                    body = body.delayElement(latency);
+                }
+                return body
+                        .flatMap(json -> response.status(request.method().equals(HttpMethod.POST) ? HttpResponseStatus.CREATED : HttpResponseStatus.OK)
+                                .header("Content-Type", "application/json")
+                                .sendByteArray(Mono.just(json))
+                                .then())
+                        .onErrorResume(IllegalArgumentException.class, e -> notFound(uri, response, e.getMessage()));
+            }
+        }
+        logger.warn("No stub for {} {}", request.method(), request.uri());
+        return request.receive().then(notFound(uri, response, "Unknown request"));
+    }
+
+    /*
+        Counts a request against the rate limit window, starting a new window once the current one is over
+     */
+    private long countRequest() {
+        long now = System.currentTimeMillis();
+        long start = windowStartMillis.get();
+        if (now - start >= settings.rateLimitWindow().toMillis() && windowStartMillis.compareAndSet(start, now)) {
+            requestsInWindow.set(0);
+        }
+        return requestsInWindow.incrementAndGet();
+    }
+
+    private long windowResetSeconds() {
+        return (windowStartMillis.get() + settings.rateLimitWindow().toMillis() + 999) / 1000;
+    }
+
+    private Mono<Void> tooManyRequests(QueryStringDecoder uri, HttpServerResponse response) {
+        long retryAfter = Math.max(1, windowResetSeconds() - System.currentTimeMillis() / 1000);
+        return response.status(HttpResponseStatus.TOO_MANY_REQUESTS)
+                .header("Content-Type", "application/json")
+                .header("Retry-After", String.valueOf(retryAfter))
+                .sendString(Mono.just(uri.path().startsWith("/v2") ?
+                        "{\"description\":\"Rate Limit Exceeded\",\"error_code\":\"CF-RateLimitExceeded\",\"code\":10013}" :
+                        "{\"errors\":[{\"code\":10013,\"title\":\"CF-RateLimitExceeded\",\"detail\":\"Rate Limit Exceeded\"}]}"))
+                .then();
+    }
+
+    private static Mono<Void> notFound(QueryStringDecoder uri, HttpServerResponse response, String message) {
+        return response.status(HttpResponseStatus.NOT_FOUND)
+                .header("Content-Type", "application/json")
+                .sendString(Mono.just(uri.path().startsWith("/v2") ?
+                        "{\"description\":\"" + message + "\",\"error_code\":\"CF-NotFound\",\"code\":10000}" :
+                        "{\"errors\":[{\"code\":10000,\"title\":\"CF-NotFound\",\"detail\":\"" + message + "\"}]}"))
+                .then();
+    }
+
+    private void route(HttpMethod method, String path, Function<Call, Object> handler) {
+        routes.add(new Route(method, Pattern.compile(path), false, handler));
+    }
+
+    private void routeReadingBody(HttpMethod method, String path, Function<Call, Object> handler) {
+        routes.add(new Route(method, Pattern.compile(path), true, handler));
+    }
+
+    private void routes() {
+        // Root, info and UAA
+        route(HttpMethod.GET, "/", call -> Map.of("links", Map.of(
+                "self", link(root),
+                "cloud_controller_v2", link(root + "/v2"),
+                "cloud_controller_v3", link(root + "/v3"),
+                "uaa", link(root),
+                "login", link(root),
+                "logging", link(root.replace("http", "ws")))));
+        route(HttpMethod.GET, "/v2/info", call -> Map.of(
+                "name", "stub",
+                "api_version", "2.250.0",
+                "authorization_endpoint", root,
+                "token_endpoint", root,
+                "doppler_logging_endpoint", root.replace("http", "ws")));
+        route(HttpMethod.POST, "/oauth/token", call -> Map.of(
+                "access_token", accessToken,
+                "token_type", "bearer",
+                "refresh_token", "stub-refresh-token",
+                "expires_in", 43199,
+                "scope", "cloud_controller.read cloud_controller.write",
+                "jti", "stub"));
+
+        // Organizations and spaces
+        route(HttpMethod.GET, "/v3/organizations", call -> v3Page(call, "/v3/organizations",
+                List.of(v3Resource(ORGANIZATION_ID, ORGANIZATION, Map.of()))));
+        route(HttpMethod.GET, "/v3/spaces", call -> v3Page(call, "/v3/spaces",
+                List.of(v3Resource(SPACE_ID, SPACE, Map.of("relationships",
+                        Map.of("organization", Map.of("data", Map.of("guid", ORGANIZATION_ID))))))));
+        route(HttpMethod.GET, "/v2/organizations", call -> v2Page(call, organizations));
+        route(HttpMethod.GET, "/v2/organizations/([^/]+)/private_domains", call -> v2Page(call, List.of()));
+        route(HttpMethod.GET, "/v2/spaces", call -> v2Page(call, List.of(space())));
+        route(HttpMethod.GET, "/v2/organizations/([^/]+)/spaces", call -> v2Page(call, List.of(space())));
+        route(HttpMethod.GET, "/v2/spaces/([^/]+)", call -> space());
+        route(HttpMethod.GET, "/v2/spaces/([^/]+)/summary", call -> spaceSummary);
+        route(HttpMethod.GET, "/v2/shared_domains", call -> v2Page(call, List.of(v2Resource("/v2/shared_domains/", DOMAIN_ID,
+                Map.of("name", DOMAIN, "internal", false)))));
+        route(HttpMethod.GET, "/v2/stacks/([^/]+)", call -> v2Resource("/v2/stacks/", STACK_ID,
+                Map.of("name", "cflinuxfs4", "description", "Cloud Foundry Linux-based filesystem")));
+
+        // Applications
+        route(HttpMethod.GET, "/v2/spaces/([^/]+)/apps", call -> v2Page(call, applications));
+        route(HttpMethod.GET, "/v2/apps/([^/]+)", call -> applications.get(applicationIndex(call.id())));
+        route(HttpMethod.PUT, "/v2/apps/([^/]+)", call -> audited("audit.app.update", "app", call.id(),
+                applications.get(applicationIndex(call.id()))));
+        route(HttpMethod.GET, "/v3/apps/([^/]+)", call -> v3Application(applicationIndex(call.id())));
+        route(HttpMethod.GET, "/v2/apps/([^/]+)/summary", call -> {
+            Map<String, Object> summary = new LinkedHashMap<>(applicationSummary(applicationIndex(call.id())));
+            summary.put("services", List.of());
+            summary.put("available_domains", List.of(Map.of("guid", DOMAIN_ID, "name", DOMAIN)));
+            return summary;
+        });
+        route(HttpMethod.GET, "/v2/apps/([^/]+)/instances", call -> Map.of(
+                "0", Map.of("state", "RUNNING", "since", 1735689600.0, "uptime", 3600),
+                "1", Map.of("state", "RUNNING", "since", 1735689600.0, "uptime", 3600)));
+        route(HttpMethod.GET, "/v2/apps/([^/]+)/stats", call -> Map.of(
+                "0", instanceStatistics(applicationIndex(call.id())),
+                "1", instanceStatistics(applicationIndex(call.id()))));
+        route(HttpMethod.GET, "/v2/apps/([^/]+)/routes", call -> v2Page(call, List.of(applicationRoutes.get(applicationIndex(call.id())))));
+        route(HttpMethod.GET, "/v2/routes", call -> v2Page(call, applicationRoutes));
+        route(HttpMethod.GET, "/v2/spaces/([^/]+)/routes", call -> v2Page(call, applicationRoutes));
+        route(HttpMethod.GET, "/v2/routes/([^/]+)/apps", call -> v2Page(call, IntStream.range(0, applicationRoutes.size())
+                .filter(index -> call.id().equals(uuid("route", index)))
+                .mapToObj(applications::get)
+                .toList()));
+        route(HttpMethod.GET, "/v3/processes", call -> v3Page(call, "/v3/processes", processes));
+
+        // Audit events, newest first, for the space index
+        route(HttpMethod.GET, "/v3/audit_events", call -> v3Page(call, "/v3/audit_events", auditEvents.reversed()));
+
+        // Pushing: the first push of a file uploads it, later ones match it
+        routeReadingBody(HttpMethod.PUT, "/v2/resource_match", this::resourceMatch);
+        route(HttpMethod.PUT, "/v2/apps/([^/]+)/bits", call -> job());
+        route(HttpMethod.GET, "/v2/jobs/([^/]+)", call -> job());
+        // Not part of Cloud Foundry: the bytes of application bits received so far, for the load scenarios
+        route(HttpMethod.GET, "/stub/uploads", call -> Map.of("bytes", uploadedBytes.get()));
+
+        // Services
+        route(HttpMethod.GET, "/v2/spaces/([^/]+)/services", call -> v2Page(call, List.of(service())));
+        route(HttpMethod.GET, "/v2/services/([^/]+)", call -> service());
+        route(HttpMethod.GET, "/v2/service_plans", call -> v2Page(call, List.of(servicePlan())));
+        route(HttpMethod.GET, "/v2/service_plans/([^/]+)", call -> servicePlan());
+        route(HttpMethod.GET, "/v2/services/([^/]+)/service_plans", call -> v2Page(call, List.of(servicePlan())));
+        route(HttpMethod.GET, "/v2/spaces/([^/]+)/service_instances", call -> v2Page(call, serviceInstances));
+        route(HttpMethod.GET, "/v2/service_bindings", call -> v2Page(call, serviceBindings));
+        route(HttpMethod.POST, "/v2/service_bindings", call -> audited("audit.service_binding.create", "service_binding", null,
+                v2Resource("/v2/service_bindings/", UUID.randomUUID().toString(),
+                        Map.of("app_guid", uuid("app", 0), "service_instance_guid", uuid("service-instance", 0),
+                                "credentials", Map.of(), "binding_options", Map.of()))));
+        route(HttpMethod.GET, "/v2/service_instances/([^/]+)/service_keys", call -> v2Page(call, List.of()));
+    }
+
+    /*
+        Answers with the resources already seen and remembers the rest, which the push uploads next
+     */
+    private List<Map<String, Object>> resourceMatch(Call call) {
+        List<Map<String, Object>> resources;
+        try {
+            resources = objectMapper.readValue(call.body(), RESOURCES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Map<String, Object>> matched = resources.stream()
+                .filter(resource -> knownResources.contains(String.valueOf(resource.get("sha1"))))
+                .toList();
+        resources.forEach(resource -> knownResources.add(String.valueOf(resource.get("sha1"))));
+        return matched;
+    }
+
+    private Map<String, Object> spaceSummary() {
+        return Map.of("guid", SPACE_ID,
+                "name", SPACE,
+                "apps", IntStream.range(0, settings.applications()).mapToObj(this::applicationSummary).toList(),
+                "services", IntStream.range(0, settings.serviceInstances()).mapToObj(this::serviceInstanceSummary).toList());
+    }
+
+    private Map<String, Object> applicationSummary(int index) {
+        String name = applicationName(index);
+        Map<String, Object> application = new LinkedHashMap<>();
+        application.put("guid", uuid("app", index));
+        application.put("name", name);
+        application.put("urls", List.of(name + "." + DOMAIN));
+        application.put("routes", List.of(Map.of("guid", uuid("route", index), "host", name,
+                "domain", Map.of("guid", DOMAIN_ID, "name", DOMAIN))));
+        application.put("service_count", index < settings.serviceInstances() ? 1 : 0);
+        application.put("service_names", index < settings.serviceInstances() ? List.of(serviceInstanceName(index)) : List.of());
+        application.put("running_instances", 2);
+        application.put("instances", 2);
+        application.put("memory", 1024);
+        application.put("disk_quota", 1024);
+        application.put("state", "STARTED");
+        application.put("package_state", "STAGED");
+        application.put("stack_guid", STACK_ID);
+        application.put("buildpack", "java_buildpack_offline");
+        application.put("detected_buildpack", "java");
+        application.put("health_check_type", "port");
+        application.put("space_guid", SPACE_ID);
+        application.put("environment_json", Map.of());
+        application.put("production", false);
+        application.put("diego", true);
+        application.put("enable_ssh", true);
+        application.put("version", uuid("version", index));
+        application.put("package_updated_at", CREATED_AT);
+        return application;
+    }
+
+    private Map<String, Object> v3Application(int index) {
+        return v3Resource(uuid("app", index), applicationName(index), Map.of(
+                "state", "STARTED",
+                "lifecycle", Map.of("type", "buildpack", "data", Map.of("buildpacks", List.of("java_buildpack_offline"), "stack", "cflinuxfs4")),
+                "relationships", Map.of("space", Map.of("data", Map.of("guid", SPACE_ID))),
+                "links", Map.of("self", link(root + "/v3/apps/" + uuid("app", index)))));
+    }
+
+    private static Map<String, Object> instanceStatistics(int index) {
+        return Map.of("state", "RUNNING",
+                "stats", Map.of("name", applicationName(index),
+                        "uris", List.of(applicationName(index) + "." + DOMAIN),
+                        "host", "10.0.0.1",
+                        "port", 61000,
+                        "uptime", 3600,
+                        "mem_quota", 1073741824L,
+                        "disk_quota", 1073741824L,
+                        "fds_quota", 16384,
+                        "usage", Map.of("time", CREATED_AT, "cpu", 0.05, "mem", 268435456L, "disk", 134217728L)));
+    }
+
+    private int applicationIndex(String id) {
+        Integer index = applicationIndexes.get(id);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown application " + id);
+        }
+        return index;
+    }
+
+    private Map<String, Object> process(int index) {
+        return Map.ofEntries(
+                Map.entry("guid", uuid("process", index)),
+                Map.entry("type", "web"),
+                Map.entry("command", "java -jar app.jar"),
+                Map.entry("instances", 2),
+                Map.entry("memory_in_mb", 1024),
+                Map.entry("disk_in_mb", 1024),
+                Map.entry("health_check", Map.of("type", "port", "data", Map.of())),
+                Map.entry("relationships", Map.of("app", Map.of("data", Map.of("guid", uuid("app", index))))),
+                Map.entry("metadata", Map.of("labels", Map.of(), "annotations", Map.of())),
+                Map.entry("created_at", CREATED_AT),
+                Map.entry("updated_at", CREATED_AT));
+    }
+
+    /*
+        Records a write as an audit event and answers with its response
+     */
+    private Object audited(String type, String targetType, String targetId, Map<String, Object> response) {
+        String now = Instant.now().truncatedTo(ChronoUnit.SECONDS).toString();
+        auditEvents.add(Map.of("guid", UUID.randomUUID().toString(),
+                "created_at", now,
+                "updated_at", now,
+                "type", type,
+                "actor", Map.of("guid", uuid("user", 0), "type", "user", "name", "bench"),
+                "target", Map.of("guid", targetId == null ? UUID.randomUUID().toString() : targetId, "type", targetType, "name", ""),
+                "data", Map.of(),
+                "space", Map.of("guid", SPACE_ID),
+                "organization", Map.of("guid", ORGANIZATION_ID),
+                "links", Map.of()));
+        return response;
+    }
+
+    private Map<String, Object> serviceInstanceSummary(int index) {
+        return Map.of("guid", uuid("service-instance", index),
+                "name", serviceInstanceName(index),
+                "bound_app_count", 1,
+                "last_operation", Map.of("type", "create", "state", "succeeded", "description", "", "updated_at", CREATED_AT),
+                "service_plan", Map.of("guid", SERVICE_PLAN_ID, "name", SERVICE_PLAN,
+                        "service", Map.of("guid", SERVICE_ID, "label", SERVICE_OFFERING, "provider", "", "version", "")));
+    }
+
+    private Map<String, Object> application(int index) {
+        Map<String, Object> entity = new LinkedHashMap<>(applicationSummary(index));
+        entity.remove("guid");
+        entity.remove("urls");
+        entity.remove("routes");
+        entity.remove("service_count");
+        entity.remove("service_names");
+        entity.remove("running_instances");
+        return v2Resource("/v2/apps/", uuid("app", index), entity);
+    }
+
+    private Map<String, Object> serviceInstance(int index) {
+        Map<String, Object> entity = new LinkedHashMap<>();
+        entity.put("name", serviceInstanceName(index));
+        entity.put("credentials", Map.of());
+        entity.put("service_plan_guid", SERVICE_PLAN_ID);
+        entity.put("service_guid", SERVICE_ID);
+        entity.put("space_guid", SPACE_ID);
+        entity.put("type", "managed_service_instance");
+        entity.put("tags", List.of());
+        entity.put("last_operation", Map.of("type", "create", "state", "succeeded", "description", "", "updated_at", CREATED_AT));
+        return v2Resource("/v2/service_instances/", uuid("service-instance", index), entity);
+    }
+
+    private Map<String, Object> job() {
+        String id = UUID.randomUUID().toString();
+        return v2Resource("/v2/jobs/", id, Map.of("guid", id, "status", "finished"));
+    }
+
+    private Map<String, Object> space() {
+        return v2Resource("/v2/spaces/", SPACE_ID, Map.of("name", SPACE, "organization_guid", ORGANIZATION_ID, "allow_ssh", true,
+                "space_quota_definition_guid", QUOTA_ID));
+    }
+
+    private Map<String, Object> service() {
+        return v2Resource("/v2/services/", SERVICE_ID, Map.of("label", SERVICE_OFFERING, "description", "Benchmark database",
+                "active", true, "bindable", true, "unique_id", SERVICE_ID, "service_broker_guid", uuid("service-broker", 0),
+                "tags", List.of(), "plan_updateable", false));
+    }
+
+    private Map<String, Object> servicePlan() {
+        return v2Resource("/v2/service_plans/", SERVICE_PLAN_ID, Map.of("name", SERVICE_PLAN, "free", true,
+                "description", "Small plan", "service_guid", SERVICE_ID, "public", true, "active", true, "bindable", true,
+                "unique_id", SERVICE_PLAN_ID));
+    }
+
+    private Map<String, Object> v2Resource(String path, String id, Map<String, Object> entity) {
+        return Map.of("metadata", Map.of("guid", id, "url", path + id, "created_at", CREATED_AT, "updated_at", CREATED_AT),
+                "entity", entity);
+    }
+
+    /*
+        One page of a v2 list, keeping only the resources matching its q=<field>:<value> filters
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> v2Page(Call call, List<Map<String, Object>> resources) {
+        List<String[]> filters = call.uri().parameters().getOrDefault("q", List.of()).stream()
+                .map(filter -> filter.split(":", 2))
+                .filter(filter -> filter.length == 2)
+                .toList();
+        List<Map<String, Object>> matching = resources.stream()
+                .filter(resource -> {
+                    Map<String, Object> entity = (Map<String, Object>) resource.get("entity");
+                    return filters.stream().allMatch(filter -> !entity.containsKey(filter[0]) || filter[1].equals(entity.get(filter[0])));
+                })
+                .toList();
+        int perPage = call.parameter("results-per-page") == null ? settings.pageSize() : Integer.parseInt(call.parameter("results-per-page"));
+        int pages = Math.max(1, (matching.size() + perPage - 1) / perPage);
+        int page = call.page();
+        Map<String, Object> list = new LinkedHashMap<>();
+        list.put("total_results", matching.size());
+        list.put("total_pages", pages);
+        list.put("prev_url", null);
+        list.put("next_url", null);
+        list.put("resources", matching.subList(Math.min(matching.size(), (page - 1) * perPage), Math.min(matching.size(), page * perPage)));
+        return list;
+    }
+
+    private Map<String, Object> v3Resource(String id, String name, Map<String, Object> fields) {
+        Map<String, Object> resource = new LinkedHashMap<>();
+        resource.put("guid", id);
+        resource.put("name", name);
+        resource.put("created_at", CREATED_AT);
+        resource.put("updated_at", CREATED_AT);
+        resource.put("metadata", Map.of("labels", Map.of(), "annotations", Map.of()));
+        resource.putAll(fields);
+        return resource;
+    }
+
+    /*
+        One page of a v3 list, of per_page resources when the client asks for a size and of the stub's
+        page size otherwise
+     */
+    private Map<String, Object> v3Page(Call call, String path, List<Map<String, Object>> resources) {
+        int perPage = call.parameter("per_page") == null ? settings.pageSize() : Integer.parseInt(call.parameter("per_page"));
+        int pages = Math.max(1, (resources.size() + perPage - 1) / perPage);
+        int page = call.page();
+        Map<String, Object> pagination = new LinkedHashMap<>();
+        pagination.put("total_results", resources.size());
+        pagination.put("total_pages", pages);
+        pagination.put("first", link(root + path + "?page=1&per_page=" + perPage));
+        pagination.put("last", link(root + path + "?page=" + pages + "&per_page=" + perPage));
+        pagination.put("next", page < pages ? link(root + path + "?page=" + (page + 1) + "&per_page=" + perPage) : null);
+        pagination.put("previous", page > 1 ? link(root + path + "?page=" + (page - 1) + "&per_page=" + perPage) : null);
+        return Map.of("pagination", pagination,
+                "resources", resources.subList(Math.min(resources.size(), (page - 1) * perPage), Math.min(resources.size(), page * perPage)));
+    }
+
+    /*
+        Doppler's stream of an application: HttpStartStop envelopes as the router would send them, in
+        batches every 10 ms
+     */
+    private Mono<Void> stream(String applicationId, HttpServerResponse response) {
+        int batch = Math.max(1, settings.envelopesPerSecond() / 100);
+        return response.sendWebsocket((in, out) -> out.sendObject(Flux.interval(Duration.ofMillis(10))
+                .flatMapIterable(tick -> IntStream.range(0, batch).boxed().toList())
+                .map(i -> new BinaryWebSocketFrame(Unpooled.wrappedBuffer(Envelope.ADAPTER.encode(envelope(applicationId)))))
+                .doOnError(e -> logger.warn("Stream of application {} failed", applicationId, e))));
+    }
+
+    /*
+        One request of 1 to 200 ms, of which one in a hundred fails
+     */
+    private static Envelope envelope(String applicationId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis() * 1_000_000;
+        long latency = random.nextLong(1_000_000, 200_000_000);
+        return new Envelope.Builder()
+                .origin("gorouter")
+                .eventType(Envelope.EventType.HttpStartStop)
+                .timestamp(now)
+                .httpStartStop(new HttpStartStop.Builder()
+                        .startTimestamp(now - latency)
+                        .stopTimestamp(now)
+                        .requestId(new org.cloudfoundry.dropsonde.events.UUID.Builder().low(random.nextLong()).high(random.nextLong()).build())
+                        .peerType(PeerType.Client)
+                        .method(Method.GET)
+                        .uri("/" + applicationId)
+                        .remoteAddress("10.0.0.1")
+                        .userAgent("stub")
+                        .statusCode(random.nextInt(100) == 0 ? 503 : 200)
+                        .contentLength(1024L)
+                        .build())
+                .build();
+    }
+
+    private static Map<String, String> link(String href) {
+        return Map.of("href", href);
+    }
+
+    /*
+        An unsigned JWT that expires in a day, enough for the token providers to read its claims
+     */
+    private static String accessToken() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"none\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        String claims = encoder.encodeToString(("{\"user_id\":\"" + uuid("user", 0) + "\",\"user_name\":\"bench\",\"exp\":" +
+                Instant.now().plus(Duration.ofDays(1)).getEpochSecond() + "}").getBytes(StandardCharsets.UTF_8));
+        return header + "." + claims + ".c3R1Yg";
+    }
+
+    static String uuid(String kind, int index) {
+        return UUID.nameUUIDFromBytes((kind + "-" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /*
+        Runs the stub on its own, for pointing a server started by hand at it
+     */
+    public static void main(String[] args) throws InterruptedException {
+        StubFoundation stub = start(Settings.fromSystemProperties(), Integer.getInteger("stub.port", 0));
+        stub.applicationProperties().forEach((name, value) -> System.out.println("--" + name + "=" + value));
+        stub.server.onDispose().block();
+    }
+}
@@ -0,0 +1,73 @@
+package org.tanzu.cfpulse.cf;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadTest {
+
+    private final Bulkhead bulkhead = new Bulkhead("applications", 1, Duration.ofMillis(100));
+
+    @Test
+    void rejectsCallsThatWaitLongerThanMaxWait() {
+        Disposable inFlight = bulkhead.run(Mono::never).subscribe();
+        try {
+            assertThat(bulkhead.active()).isEqualTo(1);
+
+            assertThatThrownBy(() -> bulkhead.run(() -> Mono.just("second")).block(Duration.ofSeconds(5)))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Too many concurrent calls to the Cloud Foundry applications endpoint");
+        } finally {
+            inFlight.dispose();
+        }
+    }
+
+    @Test
+    void queuesCallsUntilCancelledWithoutMaxWait() throws InterruptedException {
+        Bulkhead unbounded = new Bulkhead("applications", 1, null);
+        Sinks.One<String> first = Sinks.one();
+        unbounded.run(first::asMono).subscribe();
+        Mono<String> secondCall = unbounded.run(() -> Mono.just("second")).cache();
+        secondCall.subscribe();
+
+        // Far longer than the bounded bulkhead above would let it wait
+        Thread.sleep(300);
+        first.tryEmitValue("first");
+        assertThat(secondCall.block(Duration.ofSeconds(5))).isEqualTo("second");
+
+        unbounded.run(Mono::never).subscribe();
+        unbounded.run(() -> Mono.just("queued")).subscribe().dispose();
+        assertThat(unbounded.active()).isEqualTo(1);
+    }
+
+    @Test
+    void handsThePermitToTheNextWaiter() {
+        Sinks.One<String> first = Sinks.one();
+        Mono<String> firstCall = bulkhead.run(first::asMono).cache();
+        firstCall.subscribe();
+        Mono<String> secondCall = bulkhead.run(() -> Mono.just("second")).cache();
+        secondCall.subscribe();
+
+        first.tryEmitValue("first");
+
+        assertThat(firstCall.block(Duration.ofSeconds(5))).isEqualTo("first");
+        assertThat(secondCall.block(Duration.ofSeconds(5))).isEqualTo("second");
+        assertThat(bulkhead.active()).isZero();
+    }
+
+    @Test
+    void releasesThePermitWhenACallFailsOrIsCancelled() {
+        assertThatThrownBy(() -> bulkhead.run(() -> Mono.error(new IllegalArgumentException("failed"))).block())
+                .hasMessage("failed");
+        assertThat(bulkhead.active()).isZero();
+
+        bulkhead.run(Mono::never).subscribe().dispose();
+        assertThat(bulkhead.active()).isZero();
+    }
+}
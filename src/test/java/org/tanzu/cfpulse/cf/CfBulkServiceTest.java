@@ -0,0 +1,102 @@
+package org.tanzu.cfpulse.cf;
+
+import org.cloudfoundry.operations.applications.ApplicationSummary;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CfBulkServiceTest {
+
+    private static final List<ApplicationSummary> LIVE = List.of(
+            application("1", "orders-api"),
+            application("2", "orders-worker"),
+            application("3", "payments-api"),
+            application("4", "orders.v2"));
+
+    @Test
+    void matchesGlobsAgainstWholeNames() {
+        Pattern orders = CfBulkService.globPattern("orders-*");
+
+        assertThat(orders.matcher("orders-api").matches()).isTrue();
+        assertThat(orders.matcher("orders-").matches()).isTrue();
+        assertThat(orders.matcher("my-orders-api").matches()).isFalse();
+        assertThat(CfBulkService.globPattern("*-api").matcher("payments-api").matches()).isTrue();
+        assertThat(CfBulkService.globPattern("*").matcher("anything").matches()).isTrue();
+    }
+
+    @Test
+    void matchesOneCharacterForAQuestionMark() {
+        Pattern pattern = CfBulkService.globPattern("app-?");
+
+        assertThat(pattern.matcher("app-1").matches()).isTrue();
+        assertThat(pattern.matcher("app-").matches()).isFalse();
+        assertThat(pattern.matcher("app-12").matches()).isFalse();
+    }
+
+    @Test
+    void takesOtherCharactersInAGlobLiterally() {
+        Pattern pattern = CfBulkService.globPattern("orders.v[2]+");
+
+        assertThat(pattern.matcher("orders.v[2]+").matches()).isTrue();
+        assertThat(pattern.matcher("ordersXv2").matches()).isFalse();
+        assertThat(CfBulkService.globPattern("orders.*").matcher("orders.v2").matches()).isTrue();
+        assertThat(CfBulkService.globPattern("orders.*").matcher("orders-api").matches()).isFalse();
+    }
+
+    @Test
+    void selectsOnlyApplicationsMatchingEveryPartOfTheSelection() {
+        CfBulkService.Selected selected = CfBulkService.selected(LIVE,
+                new CfBulkService.Selection(List.of("orders-api", "orders-worker", "payments-api"), "orders-*", "env=staging"),
+                labelled("2", "3"));
+
+        assertThat(selected.applications()).extracting(ApplicationSummary::getName).containsExactly("orders-worker");
+        assertThat(selected.missing()).isEmpty();
+    }
+
+    @Test
+    void combinesAGlobWithALabelSelector() {
+        CfBulkService.Selected selected = CfBulkService.selected(LIVE,
+                new CfBulkService.Selection(null, "*-api", "tier=web"), labelled("1", "2"));
+
+        assertThat(selected.applications()).extracting(ApplicationSummary::getName).containsExactly("orders-api");
+    }
+
+    @Test
+    void selectsEveryApplicationForTheGlobStar() {
+        CfBulkService.Selected selected = CfBulkService.selected(LIVE, new CfBulkService.Selection(List.of(), "*", null), app -> true);
+
+        assertThat(selected.applications()).hasSize(4);
+    }
+
+    @Test
+    void reportsNamedApplicationsThatDoNotExistEvenWhenFilteredOut() {
+        CfBulkService.Selected selected = CfBulkService.selected(LIVE,
+                new CfBulkService.Selection(List.of("payments-api", "zeta", "alpha"), "orders-*", null), app -> true);
+
+        // payments-api exists but does not match the glob, so it is neither selected nor missing
+        assertThat(selected.applications()).isEmpty();
+        assertThat(selected.missing()).containsExactly("alpha", "zeta");
+    }
+
+    private static Predicate<ApplicationSummary> labelled(String... ids) {
+        Set<String> labelled = Set.of(ids);
+        return app -> labelled.contains(app.getId());
+    }
+
+    private static ApplicationSummary application(String id, String name) {
+        return ApplicationSummary.builder()
+                .id(id)
+                .name(name)
+                .requestedState("STARTED")
+                .instances(1)
+                .runningInstances(1)
+                .memoryLimit(1024)
+                .diskQuota(1024)
+                .build();
+    }
+}
@@ -0,0 +1,162 @@
+package org.tanzu.cfpulse.cf;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import org.cloudfoundry.client.v2.ClientV2Exception;
+import org.junit.jupiter.api.Test;
+import org.tanzu.cfpulse.cf.CfResilience.Endpoint;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CfResilienceTest {
+
+    private static final CfTarget TARGET = new CfTarget("default", "org", "space");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CfResilience cfResilience = new CfResilience(new CfResilienceProperties(true,
+            new CfResilienceProperties.Retry(3, Duration.ofMillis(1), Duration.ofMillis(10), 0.5),
+            new CfResilienceProperties.RateLimit(100, Duration.ofSeconds(1)),
+            new CfResilienceProperties.Bulkhead(16, Duration.ofSeconds(1), new CfResilienceProperties.Bulkhead.Writes(8, Duration.ofSeconds(1))),
+            new CfResilienceProperties.CircuitBreaker(5, Duration.ofSeconds(30))), meterRegistry);
+
+    @Test
+    void retriesReadsThatAreRateLimited() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> attempts.incrementAndGet() < 3 ?
+                Mono.error(failure(429)) : Mono.just("apps")).block();
+
+        assertThat(result).isEqualTo("apps");
+        assertThat(attempts).hasValue(3);
+        assertThat(meterRegistry.get("cf.resilience.retries").tag("endpoint", "applications").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void retriesReadsThatFailOnTheServerUpToMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> {
+            attempts.incrementAndGet();
+            return Mono.error(failure(503));
+        }).block()).isInstanceOf(ClientV2Exception.class);
+
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void doesNotRetryReadsThatFailForGood() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> {
+            attempts.incrementAndGet();
+            return Mono.error(failure(404));
+        }).block()).isInstanceOf(ClientV2Exception.class);
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void neverRetriesWrites() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> cfResilience.write(TARGET, Endpoint.APPLICATIONS, () -> {
+            attempts.incrementAndGet();
+            return Mono.error(failure(503));
+        }).block()).isInstanceOf(ClientV2Exception.class);
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void pausesAnEndpointForReadsAndWritesAfterRepeatedFailures() {
+        for (int i = 0; i < 5; i++) {
+            cfResilience.write(TARGET, Endpoint.APPLICATIONS, () -> Mono.error(failure(500))).onErrorComplete().block();
+        }
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> {
+            attempts.incrementAndGet();
+            return Mono.just("apps");
+        }).block()).isInstanceOf(IllegalStateException.class).hasMessageContaining("paused");
+
+        assertThat(attempts).hasValue(0);
+        assertThat(cfResilience.read(TARGET, Endpoint.SERVICE_INSTANCES, () -> Mono.just("services")).block()).isEqualTo("services");
+    }
+
+    @Test
+    void keepsReadsAndWritesInSeparateBulkheads() {
+        CfResilience cfResilience = new CfResilience(new CfResilienceProperties(true,
+                new CfResilienceProperties.Retry(1, Duration.ofMillis(1), Duration.ofMillis(10), 0.5),
+                new CfResilienceProperties.RateLimit(100, Duration.ofSeconds(1)),
+                new CfResilienceProperties.Bulkhead(1, Duration.ofMillis(100), new CfResilienceProperties.Bulkhead.Writes(1, Duration.ofMillis(100))),
+                new CfResilienceProperties.CircuitBreaker(5, Duration.ofSeconds(30))), meterRegistry);
+        Disposable push = cfResilience.write(TARGET, Endpoint.APPLICATIONS, Mono::never).subscribe();
+
+        try {
+            assertThat(cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> Mono.just("apps")).block()).isEqualTo("apps");
+            assertThatThrownBy(() -> cfResilience.write(TARGET, Endpoint.APPLICATIONS, () -> Mono.just("restarted")).block())
+                    .isInstanceOf(IllegalStateException.class).hasMessageContaining("Too many concurrent calls");
+        } finally {
+            push.dispose();
+        }
+    }
+
+    @Test
+    void givesBackTheTrialOfACallTurnedAwayByTheBulkhead() throws InterruptedException {
+        CfResilience cfResilience = new CfResilience(new CfResilienceProperties(true,
+                new CfResilienceProperties.Retry(1, Duration.ofMillis(1), Duration.ofMillis(10), 0.5),
+                new CfResilienceProperties.RateLimit(100, Duration.ofSeconds(1)),
+                new CfResilienceProperties.Bulkhead(1, Duration.ofMillis(100), new CfResilienceProperties.Bulkhead.Writes(1, Duration.ofMillis(100))),
+                new CfResilienceProperties.CircuitBreaker(1, Duration.ofMillis(100))), meterRegistry);
+        Disposable slowRead = cfResilience.read(TARGET, Endpoint.APPLICATIONS, Mono::never).subscribe();
+        cfResilience.write(TARGET, Endpoint.APPLICATIONS, () -> Mono.error(failure(500))).onErrorComplete().block();
+        Thread.sleep(150);
+
+        assertThatThrownBy(() -> cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> Mono.just("apps")).block())
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("Too many concurrent calls");
+        assertThat(meterRegistry.get("cf.resilience.circuit.open").tag("endpoint", "applications").gauge().value()).isEqualTo(1);
+
+        slowRead.dispose();
+        assertThat(cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> Mono.just("apps")).block()).isEqualTo("apps");
+        assertThat(meterRegistry.get("cf.resilience.circuit.open").tag("endpoint", "applications").gauge().value()).isEqualTo(0);
+    }
+
+    @Test
+    void countsOnlyHowAStreamOpensAgainstTheCircuitBreaker() {
+        for (int i = 0; i < 5; i++) {
+            cfResilience.stream(TARGET, Endpoint.DOPPLER, () -> Flux.just("envelope").concatWith(Flux.error(failure(502))))
+                    .onErrorComplete().blockLast();
+        }
+        assertThat(cfResilience.stream(TARGET, Endpoint.DOPPLER, () -> Flux.just("envelope")).blockLast()).isEqualTo("envelope");
+
+        for (int i = 0; i < 5; i++) {
+            cfResilience.stream(TARGET, Endpoint.DOPPLER, () -> Flux.error(failure(502))).onErrorComplete().blockLast();
+        }
+        assertThatThrownBy(() -> cfResilience.stream(TARGET, Endpoint.DOPPLER, () -> Flux.just("envelope")).blockLast())
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("paused");
+    }
+
+    @Test
+    void holdsBackCallsOnceTheRateLimitRunsLow() {
+        cfResilience.rateLimit(TARGET.foundation()).update(new DefaultHttpHeaders()
+                .add("X-RateLimit-Remaining", "1")
+                .add("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + 2)), 200);
+
+        long start = System.nanoTime();
+        cfResilience.read(TARGET, Endpoint.APPLICATIONS, () -> Mono.just("apps")).block();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(200));
+        assertThat(meterRegistry.get("cf.resilience.throttled").counter().count()).isEqualTo(1);
+    }
+
+    private static ClientV2Exception failure(int status) {
+        return new ClientV2Exception(status, 10000, "Failure " + status, "CF-Failure");
+    }
+}
@@ -0,0 +1,114 @@
+package org.tanzu.cfpulse.cf;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.tanzu.cfpulse.benchmark.StubFoundation;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+    Drives CfService and CfCache against a stub foundation that throttles or stalls the Cloud Controller
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "cf.index.enabled=false",
+        "cf.connection.response-timeout=PT0.5S",
+        "cf.resilience.retry.min-backoff=PT0.01S",
+        "cf.resilience.retry.max-backoff=PT0.05S",
+        "cf.resilience.circuit-breaker.failure-threshold=3",
+        "cf.resilience.circuit-breaker.open-duration=PT1S"})
+class CfServiceResilienceTest {
+
+    private static final StubFoundation stub = StubFoundation.start(new StubFoundation.Settings(Duration.ofMillis(1), 50,
+            1, 20, 5, 10, 100_000, Duration.ofSeconds(2), 0, Duration.ofSeconds(2), 0), 0);
+
+    // Every test reads details of an application no other test has read, so that none is served from the cache
+    private static final AtomicInteger applications = new AtomicInteger();
+
+    @DynamicPropertySource
+    static void stubFoundation(DynamicPropertyRegistry registry) {
+        stub.applicationProperties().forEach((name, value) -> registry.add(name, () -> value));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Autowired
+    private CfService cfService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void resolveSpace() {
+        // Looks up the organization and space once, before any fault is switched on
+        applicationDetails();
+    }
+
+    @AfterEach
+    void clearFaults() {
+        stub.throttle(0);
+        stub.stall(false);
+    }
+
+    @Test
+    void retriesReadsThrottledByTheCloudController() {
+        double retries = count("cf.resilience.retries");
+        stub.throttle(2);
+
+        assertThat(applicationDetails()).isNotNull();
+
+        assertThat(count("cf.resilience.retries") - retries).isEqualTo(2);
+    }
+
+    @Test
+    void waitsAsLongAsRetryAfterAsksBeforeTheNextCall() {
+        double throttled = count("cf.resilience.throttled");
+        stub.throttle(1);
+
+        long start = System.nanoTime();
+        assertThat(applicationDetails()).isNotNull();
+
+        // The stub asks for at least a second, far more than the retry backoff of at most 50 ms
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(900));
+        assertThat(count("cf.resilience.throttled") - throttled).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void pausesAnEndpointThatKeepsStallingAndResumesAfterATrial() throws InterruptedException {
+        stub.stall(true);
+
+        assertThatThrownBy(this::applicationDetails).satisfies(e -> assertThat(CfResilience.isTransient(e)).isTrue());
+
+        long requests = stub.cloudControllerRequests();
+        assertThatThrownBy(this::applicationDetails).isInstanceOf(IllegalStateException.class).hasMessageContaining("paused");
+        assertThat(stub.cloudControllerRequests()).isEqualTo(requests);
+
+        stub.stall(false);
+        Thread.sleep(1_100);
+        assertThat(applicationDetails()).isNotNull();
+    }
+
+    private Object applicationDetails() {
+        String name = StubFoundation.applicationName(applications.getAndIncrement() % 20);
+        return cfService.applicationDetails(name, null, null).block(Duration.ofSeconds(30));
+    }
+
+    private double count(String name) {
+        return meterRegistry.find(name).tag("endpoint", "applications").counters().stream()
+                .mapToDouble(counter -> counter.count())
+                .sum();
+    }
+}
@@ -0,0 +1,178 @@
+package org.tanzu.cfpulse.cf;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricWindowTest {
+
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+    private static final Duration RESOLUTION = Duration.ofSeconds(10);
+
+    // The start of a slot, well after the epoch so that the window has moved before any test begins
+    private static final long START = 1_000_000_000L;
+
+    private final MetricWindow window = new MetricWindow(WINDOW, RESOLUTION);
+
+    @Test
+    void keepsSmallLatenciesInBucketsOfTheirOwn() {
+        for (long value = 0; value < 8; value++) {
+            assertThat(MetricWindow.bucket(value)).isEqualTo((int) value);
+            assertThat(MetricWindow.highestValue((int) value)).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void boundsEveryBucketToAnEighthOfItsLowestValue() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 100_000; i++) {
+            long value = 8 + random.nextLong(1L << random.nextInt(4, 32));
+            int bucket = MetricWindow.bucket(value);
+            long highest = MetricWindow.highestValue(bucket);
+
+            assertThat(bucket).isBetween(0, MetricWindow.BUCKETS - 1);
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat((double) highest).isLessThan(value * 1.125);
+            assertThat(MetricWindow.bucket(highest)).isEqualTo(bucket);
+            assertThat(MetricWindow.bucket(highest + 1)).isEqualTo(bucket + 1);
+        }
+        assertThat(MetricWindow.bucket((1L << 32) - 1)).isEqualTo(MetricWindow.BUCKETS - 1);
+    }
+
+    @Test
+    void reportsPercentilesWithinAnEighthOfTheExactValue() {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] latencies = new long[10_000];
+        for (int i = 0; i < latencies.length; i++) {
+            // Spread over four orders of magnitude, from 100 µs to about a second
+            latencies[i] = (long) (100 * Math.pow(10_000, random.nextDouble()));
+            window.recordRequest(START + i % 10_000, latencies[i], 200);
+        }
+        Arrays.sort(latencies);
+
+        ApplicationMetrics.Latency latency = snapshot(START + 9_999, WINDOW).latencyMs();
+
+        assertWithinAnEighth(latency.p50(), exact(latencies, 0.50));
+        assertWithinAnEighth(latency.p90(), exact(latencies, 0.90));
+        assertWithinAnEighth(latency.p95(), exact(latencies, 0.95));
+        assertWithinAnEighth(latency.p99(), exact(latencies, 0.99));
+        assertThat(latency.max()).isEqualTo(latencies[latencies.length - 1] / 1000.0);
+    }
+
+    @Test
+    void neverReportsAPercentileAboveTheLargestLatency() {
+        window.recordRequest(START, 1_000_001, 200);
+
+        ApplicationMetrics.Latency latency = snapshot(START, WINDOW).latencyMs();
+
+        assertThat(latency.p50()).isEqualTo(1000.001);
+        assertThat(latency.p99()).isEqualTo(1000.001);
+        assertThat(latency.max()).isEqualTo(1000.001);
+    }
+
+    @Test
+    void countsRequestsErrorsAndContainerSamples() {
+        window.recordRequest(START, 1_000, 200);
+        window.recordRequest(START + 1, 1_000, 404);
+        window.recordRequest(START + 2, 1_000, 503);
+        window.recordRequest(START + 3, 1_000, 500);
+        window.recordContainer(START, 10, 100 * 1024 * 1024, 50 * 1024 * 1024);
+        window.recordContainer(START + 1, 30, 300 * 1024 * 1024, 70 * 1024 * 1024);
+
+        ApplicationMetrics metrics = snapshot(START + 5, WINDOW);
+
+        assertThat(metrics.requests()).isEqualTo(4);
+        assertThat(metrics.serverErrors()).isEqualTo(2);
+        assertThat(metrics.clientErrors()).isEqualTo(1);
+        assertThat(metrics.errorRatio()).isEqualTo(0.5);
+        assertThat(metrics.container().samples()).isEqualTo(2);
+        assertThat(metrics.container().cpuPercentAverage()).isEqualTo(20.0);
+        assertThat(metrics.container().cpuPercentMax()).isEqualTo(30.0);
+        assertThat(metrics.container().memoryMbAverage()).isEqualTo(200.0);
+        assertThat(metrics.container().memoryMbMax()).isEqualTo(300.0);
+        assertThat(metrics.container().diskMbMax()).isEqualTo(70.0);
+    }
+
+    @Test
+    void reusesASlotOnceTheWindowHasMovedPastIt() {
+        window.recordRequest(START, 1_000, 500);
+        // Six slots later the same slot comes round again, and the old request is cleared
+        long later = START + WINDOW.toMillis();
+        window.recordRequest(later, 2_000, 200);
+
+        ApplicationMetrics metrics = snapshot(later, WINDOW);
+
+        assertThat(metrics.requests()).isEqualTo(1);
+        assertThat(metrics.serverErrors()).isZero();
+        assertThat(metrics.latencyMs().max()).isEqualTo(2.0);
+    }
+
+    @Test
+    void ignoresRecordsThatHaveFallenOutOfTheWindow() {
+        long later = START + WINDOW.toMillis();
+        window.recordRequest(later, 2_000, 200);
+        window.recordRequest(START, 1_000, 500);
+
+        assertThat(snapshot(later, WINDOW).requests()).isEqualTo(1);
+    }
+
+    @Test
+    void leavesOutSlotsOlderThanTheWindow() {
+        window.recordRequest(START, 1_000, 200);
+
+        assertThat(snapshot(START + WINDOW.toMillis() - 1, WINDOW).requests()).isEqualTo(1);
+        assertThat(snapshot(START + WINDOW.toMillis(), WINDOW).requests()).isZero();
+        assertThat(snapshot(START + WINDOW.toMillis(), WINDOW).latencyMs()).isNull();
+    }
+
+    @Test
+    void sumsOnlyTheSlotsWithinTheSpan() {
+        window.recordRequest(START, 1_000, 200);
+        window.recordRequest(START + 10_000, 1_000, 200);
+        window.recordRequest(START + 20_000, 1_000, 200);
+        window.recordRequest(START + 20_000, 1_000, 200);
+        long now = START + 25_000;
+
+        ApplicationMetrics lastSlot = window.snapshot("app", 0, now, Duration.ofSeconds(10));
+        assertThat(lastSlot.requests()).isEqualTo(2);
+        assertThat(lastSlot.spanSeconds()).isEqualTo(10);
+        assertThat(lastSlot.requestsPerSecond()).isEqualTo(0.2);
+
+        // A span that ends part way through a slot covers the whole of it
+        assertThat(window.snapshot("app", 0, now, Duration.ofSeconds(15)).requests()).isEqualTo(3);
+        assertThat(window.snapshot("app", 0, now, Duration.ofSeconds(30)).requests()).isEqualTo(4);
+    }
+
+    @Test
+    void capsTheSpanAtTheWindowAndAtTheTimeSinceTrackingStarted() {
+        window.recordRequest(START, 1_000, 200);
+
+        ApplicationMetrics beyondTheWindow = window.snapshot("app", 0, START, Duration.ofHours(1));
+        assertThat(beyondTheWindow.spanSeconds()).isEqualTo(WINDOW.toSeconds());
+
+        ApplicationMetrics justTracked = window.snapshot("app", START - 20_000, START, WINDOW);
+        assertThat(justTracked.spanSeconds()).isEqualTo(20);
+        assertThat(justTracked.requestsPerSecond()).isEqualTo(0.05);
+
+        // Never less than one slot, so a window tracked for a moment does not report a huge rate
+        assertThat(window.snapshot("app", START, START, WINDOW).spanSeconds()).isEqualTo(10);
+    }
+
+    private ApplicationMetrics snapshot(long nowMillis, Duration span) {
+        return window.snapshot("app", 0, nowMillis, span);
+    }
+
+    private static long exact(long[] sorted, double quantile) {
+        return sorted[(int) Math.ceil(quantile * sorted.length) - 1];
+    }
+
+    private static void assertWithinAnEighth(double reportedMillis, long exactMicros) {
+        double reportedMicros = reportedMillis * 1000;
+        assertThat(reportedMicros).isGreaterThanOrEqualTo(exactMicros - 0.5);
+        assertThat(reportedMicros).isLessThanOrEqualTo(exactMicros * 1.125);
+    }
+}
@@ -0,0 +1,66 @@
+package org.tanzu.cfpulse.cf;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitTest {
+
+    private static final Duration MAX_DELAY = Duration.ofSeconds(30);
+
+    private final RateLimit rateLimit = new RateLimit();
+
+    @Test
+    void doesNotHoldBackCallsBeforeAnyResponse() {
+        assertThat(rateLimit.delay(100, MAX_DELAY)).isZero();
+    }
+
+    @Test
+    void doesNotHoldBackCallsWhileMoreThanTheReserveIsLeft() {
+        rateLimit.update(headers(10_000, 5_000, 60), 200);
+
+        assertThat(rateLimit.delay(100, MAX_DELAY)).isZero();
+        assertThat(rateLimit.remaining()).isEqualTo(4_999);
+    }
+
+    @Test
+    void spreadsCallsOverTheRestOfTheWindowOnceTheReserveIsReached() {
+        rateLimit.update(headers(10_000, 9, 20), 200);
+
+        Duration first = rateLimit.delay(100, MAX_DELAY);
+        Duration second = rateLimit.delay(100, MAX_DELAY);
+
+        // About a tenth of the twenty seconds left, then a ninth
+        assertThat(first).isBetween(Duration.ofMillis(1_500), Duration.ofMillis(2_000));
+        assertThat(second).isGreaterThan(first);
+        assertThat(rateLimit.remaining()).isEqualTo(7);
+    }
+
+    @Test
+    void waitsForTheResetOnceNothingIsLeftButNoLongerThanMaxDelay() {
+        rateLimit.update(headers(10_000, 0, 3_600), 200);
+
+        assertThat(rateLimit.delay(100, MAX_DELAY)).isEqualTo(MAX_DELAY);
+    }
+
+    @Test
+    void tooManyRequestsUsesUpTheBudgetUntilRetryAfter() {
+        HttpHeaders headers = new DefaultHttpHeaders().add("Retry-After", "5");
+
+        rateLimit.update(headers, 429);
+
+        assertThat(rateLimit.remaining()).isZero();
+        assertThat(rateLimit.delay(100, MAX_DELAY)).isBetween(Duration.ofSeconds(4), Duration.ofSeconds(5));
+    }
+
+    private static HttpHeaders headers(long limit, long remaining, long resetInSeconds) {
+        return new DefaultHttpHeaders()
+                .add("X-RateLimit-Limit", String.valueOf(limit))
+                .add("X-RateLimit-Remaining", String.valueOf(remaining))
+                .add("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + resetInSeconds));
+    }
+}
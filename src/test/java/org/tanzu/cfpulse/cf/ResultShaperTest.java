@@ -0,0 +1,138 @@
+package org.tanzu.cfpulse.cf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResultShaperTest {
+
+    record Instance(String state, int index) {
+    }
+
+    record Limits(int memory, int disk) {
+    }
+
+    record Application(String name, String requestedState, Limits limits, List<Instance> instanceDetails) {
+    }
+
+    private static final List<Application> APPLICATIONS = IntStream.range(0, 5)
+            .mapToObj(i -> new Application("app-" + i, i % 2 == 0 ? "STARTED" : "STOPPED", new Limits(1024, 2048),
+                    List.of(new Instance("RUNNING", 0), new Instance("CRASHED", 1))))
+            .toList();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResultShaper resultShaper = new ResultShaper(objectMapper);
+
+    @Test
+    void returnsResultsNobodyAskedToShapeAsTheyAre() {
+        Application application = APPLICATIONS.get(0);
+
+        assertThat(resultShaper.shape(application, null)).isSameAs(application);
+        assertThat(resultShaper.shape(application, List.of())).isSameAs(application);
+        assertThat(resultShaper.shapeList(APPLICATIONS, null, null, null, "json")).isSameAs(APPLICATIONS);
+    }
+
+    @Test
+    void keepsNestedFieldsNamedWithDots() {
+        JsonNode shaped = tree(resultShaper.shape(APPLICATIONS.get(0), List.of("name", "limits.memory", "instanceDetails.state")));
+
+        assertThat(shaped.toString()).isEqualTo(
+                "{\"name\":\"app-0\",\"limits\":{\"memory\":1024},\"instanceDetails\":[{\"state\":\"RUNNING\"},{\"state\":\"CRASHED\"}]}");
+    }
+
+    @Test
+    void keepsAWholeFieldWhenItAndOneOfItsChildrenAreBothNamed() {
+        JsonNode shaped = tree(resultShaper.shape(APPLICATIONS.get(0), List.of("limits.disk", "limits")));
+
+        assertThat(shaped.toString()).isEqualTo("{\"limits\":{\"memory\":1024,\"disk\":2048}}");
+    }
+
+    @Test
+    void leavesOutFieldsThatDoNotExist() {
+        JsonNode shaped = tree(resultShaper.shape(APPLICATIONS.get(0), List.of("name", "missing", "limits.missing")));
+
+        assertThat(shaped.toString()).isEqualTo("{\"name\":\"app-0\",\"limits\":{}}");
+    }
+
+    @Test
+    void projectsEveryItemOfAList() {
+        JsonNode shaped = tree(resultShaper.shapeList(APPLICATIONS, List.of("name"), null, null, null));
+
+        assertThat(shaped.isArray()).isTrue();
+        assertThat(shaped).hasSize(5);
+        assertThat(shaped.get(4).toString()).isEqualTo("{\"name\":\"app-4\"}");
+    }
+
+    @Test
+    void pagesWithTheTotalAndOffset() {
+        JsonNode page = tree(resultShaper.shapeList(APPLICATIONS, List.of("name"), 1, 2, null));
+
+        assertThat(page.get("total").asInt()).isEqualTo(5);
+        assertThat(page.get("offset").asInt()).isEqualTo(1);
+        assertThat(page.get("items").toString()).isEqualTo("[{\"name\":\"app-1\"},{\"name\":\"app-2\"}]");
+    }
+
+    @Test
+    void returnsAnEmptyPagePastTheEnd() {
+        JsonNode page = tree(resultShaper.shapeList(APPLICATIONS, null, 10, 2, null));
+
+        assertThat(page.get("total").asInt()).isEqualTo(5);
+        assertThat(page.get("offset").asInt()).isEqualTo(5);
+        assertThat(page.get("items")).isEmpty();
+    }
+
+    @Test
+    void clampsNegativeOffsetsAndLimitsAndLimitsPastTheEnd() {
+        JsonNode negativeOffset = tree(resultShaper.shapeList(APPLICATIONS, List.of("name"), -3, 1, null));
+        assertThat(negativeOffset.get("offset").asInt()).isZero();
+        assertThat(negativeOffset.get("items").toString()).isEqualTo("[{\"name\":\"app-0\"}]");
+
+        JsonNode negativeLimit = tree(resultShaper.shapeList(APPLICATIONS, null, 0, -1, null));
+        assertThat(negativeLimit.get("items")).isEmpty();
+
+        JsonNode pastTheEnd = tree(resultShaper.shapeList(APPLICATIONS, null, 3, 100, null));
+        assertThat(pastTheEnd.get("items")).hasSize(2);
+    }
+
+    @Test
+    void rejectsUnknownFormats() {
+        assertThatThrownBy(() -> resultShaper.shapeList(APPLICATIONS, null, null, null, "csv"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown format csv; use json or table");
+    }
+
+    @Test
+    void acceptsFormatsInAnyCase() {
+        assertThat(resultShaper.shapeList(APPLICATIONS, null, null, null, "JSON")).isSameAs(APPLICATIONS);
+        assertThat(tree(resultShaper.shapeList(APPLICATIONS, null, null, null, "Table")).has("rows")).isTrue();
+    }
+
+    @Test
+    void writesTablesAsColumnsAndOneRowPerItem() {
+        JsonNode table = tree(resultShaper.shapeList(APPLICATIONS, List.of("name", "limits.memory", "missing"), 3, null, "table"));
+
+        assertThat(table.get("total").asInt()).isEqualTo(5);
+        assertThat(table.get("offset").asInt()).isEqualTo(3);
+        assertThat(table.get("columns").toString()).isEqualTo("[\"name\",\"limits.memory\",\"missing\"]");
+        assertThat(table.get("rows").toString()).isEqualTo("[[\"app-3\",1024,null],[\"app-4\",1024,null]]");
+        assertThat(table.has("items")).isFalse();
+    }
+
+    @Test
+    void takesTheColumnsOfATableWithoutFieldsFromTheItems() {
+        JsonNode table = tree(resultShaper.shapeList(APPLICATIONS, null, 0, 1, "table"));
+
+        assertThat(table.get("columns").toString()).isEqualTo("[\"name\",\"requestedState\",\"limits\",\"instanceDetails\"]");
+        assertThat(table.get("rows").get(0).get(2).toString()).isEqualTo("{\"memory\":1024,\"disk\":2048}");
+    }
+
+    private JsonNode tree(Object shaped) {
+        return objectMapper.valueToTree(shaped);
+    }
+}
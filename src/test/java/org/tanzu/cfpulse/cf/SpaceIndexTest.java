@@ -0,0 +1,111 @@
+package org.tanzu.cfpulse.cf;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.tanzu.cfpulse.benchmark.StubFoundation;
+import org.tanzu.cfpulse.cf.SpaceIndex.Slice;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+    Builds the space index against a stub foundation, with the scheduled polls and reloads pushed out of
+    the way so that the test decides when the index reloads
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "cf.index.poll-interval=PT1H",
+        "cf.index.instance-state-interval=PT1H",
+        "cf.cache.ttl.applications=PT3S"})
+class SpaceIndexTest {
+
+    private static final StubFoundation stub = StubFoundation.start(new StubFoundation.Settings(Duration.ofMillis(1), 50,
+            1, 20, 5, 10, 100_000, Duration.ofSeconds(2), 0, Duration.ofSeconds(2), 0), 0);
+
+    @DynamicPropertySource
+    static void stubFoundation(DynamicPropertyRegistry registry) {
+        stub.applicationProperties().forEach((name, value) -> registry.add(name, () -> value));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Autowired
+    private SpaceIndex spaceIndex;
+
+    @BeforeEach
+    void buildIndex() {
+        // Rebuilt for every test, waiting out the initial build or any reload still running
+        await(() -> spaceIndex.resync().map(Optional::of)
+                .onErrorReturn(IllegalStateException.class, Optional.empty())
+                .block(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    void fallsThroughOnceTheInstanceStateIsOlderThanTheCacheTtlAndReloadsIt() throws InterruptedException {
+        assertThat(spaceIndex.applications()).hasValueSatisfying(applications -> assertThat(applications).hasSize(20));
+
+        Thread.sleep(3_500);
+        long requests = stub.cloudControllerRequests();
+        assertThat(spaceIndex.applications()).isEmpty();
+
+        // The lookup that found the slice too old asked for a reload, after which the index answers again
+        assertThat(await(spaceIndex::applications)).hasSize(20);
+        assertThat(stub.cloudControllerRequests()).isGreaterThan(requests);
+    }
+
+    @Test
+    void keepsAnsweringWhileTheInstanceStateIsReloadedInTheBackground() throws InterruptedException {
+        Thread.sleep(2_000);
+        spaceIndex.refreshInstanceState();
+        // Still in use while the reload is in flight
+        assertThat(spaceIndex.applications()).isPresent();
+
+        // Past the TTL since the index was built, but not since the background reload
+        Thread.sleep(2_000);
+        assertThat(spaceIndex.applications()).isPresent();
+    }
+
+    @Test
+    void mapsAuditEventsToTheSlicesTheyTouch() {
+        assertThat(SpaceIndex.slicesFor("audit.app.map-route")).isEqualTo(EnumSet.of(Slice.APPLICATIONS, Slice.ROUTES));
+        assertThat(SpaceIndex.slicesFor("audit.app.unmap-route")).isEqualTo(EnumSet.of(Slice.APPLICATIONS, Slice.ROUTES));
+        assertThat(SpaceIndex.slicesFor("audit.app.update")).isEqualTo(EnumSet.of(Slice.APPLICATIONS, Slice.PROCESSES));
+        assertThat(SpaceIndex.slicesFor("audit.app.process.scale")).isEqualTo(EnumSet.of(Slice.APPLICATIONS, Slice.PROCESSES));
+        assertThat(SpaceIndex.slicesFor("audit.route.create")).isEqualTo(EnumSet.of(Slice.ROUTES));
+        assertThat(SpaceIndex.slicesFor("audit.service_instance.delete")).isEqualTo(EnumSet.of(Slice.SERVICE_INSTANCES, Slice.SERVICE_KEYS));
+        assertThat(SpaceIndex.slicesFor("audit.user_provided_service_instance.create"))
+                .isEqualTo(EnumSet.of(Slice.SERVICE_INSTANCES, Slice.SERVICE_KEYS));
+        assertThat(SpaceIndex.slicesFor("audit.service_binding.create")).isEqualTo(EnumSet.of(Slice.SERVICE_INSTANCES));
+        assertThat(SpaceIndex.slicesFor("audit.service_credential_binding.delete")).isEqualTo(EnumSet.of(Slice.SERVICE_INSTANCES));
+        assertThat(SpaceIndex.slicesFor("audit.service_key.create")).isEqualTo(EnumSet.of(Slice.SERVICE_KEYS));
+        assertThat(SpaceIndex.slicesFor("audit.space.update")).isEmpty();
+    }
+
+    private static <T> T await(Supplier<Optional<T>> lookup) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            Optional<T> value = lookup.get();
+            if (value.isPresent()) {
+                return value.get();
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalStateException("Timed out waiting for the space index");
+    }
+}